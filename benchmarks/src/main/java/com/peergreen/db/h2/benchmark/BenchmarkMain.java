@@ -0,0 +1,42 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Launch the JMH benchmarks and write the results as JSON (jmh-result.json) unless a result format is given.
+ * Usage: java -jar target/benchmarks.jar [JMH options]
+ * @author Florent Benoit
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-rf")) {
+            arguments.add("-rf");
+            arguments.add("json");
+            if (!arguments.contains("-rff")) {
+                arguments.add("-rff");
+                arguments.add("jmh-result.json");
+            }
+        }
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[arguments.size()]));
+    }
+
+}
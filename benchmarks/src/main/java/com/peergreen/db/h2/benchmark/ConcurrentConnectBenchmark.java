@@ -0,0 +1,105 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.peergreen.db.h2.H2Driver;
+
+/**
+ * Throughput of connect/close done concurrently on several ports.
+ * Servers are kept started so that the driver bookkeeping and the TCP handshake are measured.
+ * The number of threads is changed with the -t option of JMH.
+ * @author Florent Benoit
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ConcurrentConnectBenchmark {
+
+    private static final int FIRST_PORT = 15610;
+
+    /**
+     * Servers of all the ports.
+     */
+    @State(Scope.Benchmark)
+    public static class Ports {
+
+        @Param({"1", "4"})
+        private int ports;
+
+        private final AtomicInteger threads = new AtomicInteger();
+
+        private final List<Connection> keepers = new ArrayList<>();
+
+        @Setup
+        public void start() throws SQLException {
+            for (int i = 0; i < ports; i++) {
+                keepers.add(H2Driver.instance().connect(url(i), null));
+            }
+        }
+
+        @TearDown
+        public void stop() throws SQLException {
+            for (Connection keeper : keepers) {
+                keeper.close();
+            }
+            keepers.clear();
+        }
+
+        private static String url(int index) {
+            return "jdbc:pg+h2:tcp://localhost:" + (FIRST_PORT + index) + "/concurrent";
+        }
+    }
+
+    /**
+     * Each thread uses its own port (threads are spread across the ports).
+     */
+    @State(Scope.Thread)
+    public static class Client {
+
+        private String url;
+
+        @Setup
+        public void setup(Ports ports) {
+            url = Ports.url(ports.threads.getAndIncrement() % ports.ports);
+        }
+    }
+
+    @Benchmark
+    public void connectAndClose(Client client) throws SQLException {
+        H2Driver.instance().connect(client.url, null).close();
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbc.JdbcConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.peergreen.db.h2.H2Driver;
+import com.peergreen.db.h2.internal.H2Connection;
+
+/**
+ * Per-call overhead of the connection returned by the driver.
+ * The reflective proxy is the wrapper used before the delegating H2Connection.
+ * An in-memory H2 connection is used so that the dispatch cost is not hidden by a network round-trip.
+ * @author Florent Benoit
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConnectionDispatchBenchmark {
+
+    private Connection physicalConnection;
+
+    private Connection proxyConnection;
+
+    private Connection delegatingConnection;
+
+    @Setup
+    public void setup() throws SQLException {
+        physicalConnection = new JdbcConnection("jdbc:h2:mem:dispatch", new Properties());
+        proxyConnection = (Connection) Proxy.newProxyInstance(ConnectionDispatchBenchmark.class.getClassLoader(), new Class[] {Connection.class}, new ReflectiveHandler(physicalConnection));
+        // port -1 is not managed by the driver
+        delegatingConnection = new H2Connection(H2Driver.instance(), -1, physicalConnection);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        physicalConnection.close();
+    }
+
+    @Benchmark
+    public boolean direct() throws SQLException {
+        return physicalConnection.getAutoCommit();
+    }
+
+    @Benchmark
+    public boolean reflectiveProxy() throws SQLException {
+        return proxyConnection.getAutoCommit();
+    }
+
+    @Benchmark
+    public boolean delegatingConnection() throws SQLException {
+        return delegatingConnection.getAutoCommit();
+    }
+
+    @Benchmark
+    public String directWithArgument() throws SQLException {
+        return physicalConnection.nativeSQL("SELECT 1");
+    }
+
+    @Benchmark
+    public String reflectiveProxyWithArgument() throws SQLException {
+        return proxyConnection.nativeSQL("SELECT 1");
+    }
+
+    @Benchmark
+    public String delegatingConnectionWithArgument() throws SQLException {
+        return delegatingConnection.nativeSQL("SELECT 1");
+    }
+
+    /**
+     * Same dispatch as the former H2ConnectionInvocationHandler.
+     */
+    private static class ReflectiveHandler implements InvocationHandler {
+
+        private final Connection wrappedConnection;
+
+        public ReflectiveHandler(Connection wrappedConnection) {
+            this.wrappedConnection = wrappedConnection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName())) {
+                return method.invoke(wrappedConnection, args);
+            }
+            return method.invoke(wrappedConnection, args);
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.peergreen.db.h2.H2Driver;
+
+/**
+ * Cost of connect and close on the driver, with and without the start/stop of the H2 server.
+ * Each operation is measured alone as a server start or stop is in the order of milliseconds.
+ * @author Florent Benoit
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 30)
+@Fork(1)
+public class DriverLifecycleBenchmark {
+
+    private static final String URL = "jdbc:pg+h2:tcp://localhost:15600/lifecycle";
+
+    /**
+     * No connection on the port: connect starts the server and close stops it.
+     */
+    @State(Scope.Thread)
+    public static class ColdPort {
+
+        private final H2Driver driver = H2Driver.instance();
+
+        private Connection connection;
+
+        @TearDown(Level.Invocation)
+        public void close() throws SQLException {
+            if (connection != null) {
+                connection.close();
+                connection = null;
+            }
+        }
+
+    }
+
+    /**
+     * A connection is kept on the port so that the server stays started.
+     */
+    @State(Scope.Thread)
+    public static class WarmPort {
+
+        private final H2Driver driver = H2Driver.instance();
+
+        private Connection keeper;
+
+        private Connection connection;
+
+        @Setup(Level.Trial)
+        public void start() throws SQLException {
+            keeper = driver.connect(URL, null);
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() throws SQLException {
+            if (connection != null) {
+                connection.close();
+                connection = null;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws SQLException {
+            keeper.close();
+        }
+
+    }
+
+    /**
+     * A connection is opened before each invocation, its close stops the server.
+     */
+    @State(Scope.Thread)
+    public static class LastConnection {
+
+        private final H2Driver driver = H2Driver.instance();
+
+        private Connection connection;
+
+        @Setup(Level.Invocation)
+        public void connect() throws SQLException {
+            connection = driver.connect(URL, null);
+        }
+
+    }
+
+    /**
+     * A connection is opened before each invocation while another one keeps the server started.
+     */
+    @State(Scope.Thread)
+    public static class NotLastConnection {
+
+        private final H2Driver driver = H2Driver.instance();
+
+        private Connection keeper;
+
+        private Connection connection;
+
+        @Setup(Level.Trial)
+        public void start() throws SQLException {
+            keeper = driver.connect(URL, null);
+        }
+
+        @Setup(Level.Invocation)
+        public void connect() throws SQLException {
+            connection = driver.connect(URL, null);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws SQLException {
+            keeper.close();
+        }
+
+    }
+
+    @Benchmark
+    public Connection coldConnect(ColdPort state) throws SQLException {
+        state.connection = state.driver.connect(URL, null);
+        return state.connection;
+    }
+
+    @Benchmark
+    public Connection warmConnect(WarmPort state) throws SQLException {
+        state.connection = state.driver.connect(URL, null);
+        return state.connection;
+    }
+
+    @Benchmark
+    public void closeWithServerStop(LastConnection state) throws SQLException {
+        state.connection.close();
+    }
+
+    @Benchmark
+    public void closeWithoutServerStop(NotLastConnection state) throws SQLException {
+        state.connection.close();
+    }
+
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.peergreen.db.h2.H2Driver;
+
+/**
+ * Read-heavy throughput of a managed database for each H2 file system of the FILE_STORE setting.
+ * The rows are larger than the H2 cache so that the reads go to the file store, use -p rows=... to match the size of a dataset.
+ * @author Florent Benoit
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class FileStoreBenchmark {
+
+    private static final String URL = "jdbc:pg+h2:tcp://localhost:15602/filestore";
+
+    /**
+     * Database filled once per trial and kept opened by a connection.
+     */
+    @State(Scope.Benchmark)
+    public static class Database {
+
+        @Param({"default", "nio", "nioMapped"})
+        private String fileStore;
+
+        @Param({"EMBEDDED=false", "EMBEDDED=true"})
+        private String access;
+
+        @Param({"200000"})
+        private int rows;
+
+        private final H2Driver driver = H2Driver.instance();
+
+        private Connection keeper;
+
+        private String url;
+
+        private Properties info;
+
+        @Setup(Level.Trial)
+        public void fill() throws SQLException {
+            // small cache to measure the file store, not the H2 cache
+            url = URL.concat("_").concat(fileStore).concat(";FILE_STORE=").concat(fileStore).concat(";").concat(access).concat(";CACHE_SIZE=1024");
+            info = new Properties();
+            info.setProperty("user", "bench");
+            info.setProperty("password", "bench");
+            keeper = driver.connect(url, info);
+            try (Statement statement = keeper.createStatement()) {
+                statement.execute("DROP TABLE benchTable IF EXISTS");
+                statement.execute("CREATE TABLE benchTable(id int primary key, value varchar(255))");
+            }
+            keeper.setAutoCommit(false);
+            try (PreparedStatement statement = keeper.prepareStatement("INSERT INTO benchTable VALUES(?, ?)")) {
+                StringBuilder value = new StringBuilder();
+                while (value.length() < 200) {
+                    value.append("peergreen");
+                }
+                for (int i = 0; i < rows; i++) {
+                    statement.setInt(1, i);
+                    statement.setString(2, value.toString());
+                    statement.addBatch();
+                    if (i % 1000 == 999) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+            }
+            keeper.commit();
+            keeper.setAutoCommit(true);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            try (Statement statement = keeper.createStatement()) {
+                statement.execute("DROP TABLE benchTable");
+            }
+            keeper.close();
+        }
+
+    }
+
+    /**
+     * Connection of a benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Reader {
+
+        private Connection connection;
+
+        private PreparedStatement lookup;
+
+        private PreparedStatement range;
+
+        @Setup(Level.Trial)
+        public void connect(Database database) throws SQLException {
+            connection = database.driver.connect(database.url, database.info);
+            lookup = connection.prepareStatement("SELECT value FROM benchTable WHERE id = ?");
+            range = connection.prepareStatement("SELECT COUNT(value) FROM benchTable WHERE id BETWEEN ? AND ?");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            connection.close();
+        }
+
+    }
+
+    @Benchmark
+    public String pointLookup(Database database, Reader reader) throws SQLException {
+        reader.lookup.setInt(1, ThreadLocalRandom.current().nextInt(database.rows));
+        try (ResultSet resultSet = reader.lookup.executeQuery()) {
+            return resultSet.next() ? resultSet.getString(1) : null;
+        }
+    }
+
+    @Benchmark
+    public int rangeScan(Database database, Reader reader) throws SQLException {
+        int start = ThreadLocalRandom.current().nextInt(Math.max(1, database.rows - 1000));
+        reader.range.setInt(1, start);
+        reader.range.setInt(2, start + 1000);
+        try (ResultSet resultSet = reader.range.executeQuery()) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+/**
+ * Receives the progress of a bulk load, after each commit.
+ * @author Florent Benoit
+ */
+public interface BulkLoadListener {
+
+    /**
+     * Notify that rows have been committed.
+     * @param rows the number of rows committed since the start of the load
+     * @param rowsPerSecond the throughput since the start of the load
+     * @param batchSize the current size of the batches
+     */
+    void progress(long rows, double rowsPerSecond, int batchSize);
+
+}
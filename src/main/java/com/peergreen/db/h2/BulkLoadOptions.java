@@ -0,0 +1,123 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+/**
+ * Options of a bulk load. By default the batch size and the commit interval are tuned during the load.
+ * @author Florent Benoit
+ */
+public class BulkLoadOptions {
+
+    /**
+     * Fixed size of the batches (0 to tune it with the throughput).
+     */
+    private int batchSize;
+
+    /**
+     * Fixed number of rows between two commits (0 to commit by time).
+     */
+    private long commitInterval;
+
+    /**
+     * Time in milliseconds between two commits when the commit interval is not fixed.
+     */
+    private long commitTime = 1000L;
+
+    /**
+     * Drop the secondary indexes before the load and create them again after.
+     */
+    private boolean rebuildIndexes;
+
+    private BulkLoadListener listener;
+
+    /**
+     * @return the fixed size of the batches (0 if tuned with the throughput)
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the fixed size of the batches (0 to tune it with the throughput)
+     * @return these options
+     */
+    public BulkLoadOptions setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @return the fixed number of rows between two commits (0 if committed by time)
+     */
+    public long getCommitInterval() {
+        return commitInterval;
+    }
+
+    /**
+     * @param commitInterval the fixed number of rows between two commits (0 to commit by time)
+     * @return these options
+     */
+    public BulkLoadOptions setCommitInterval(long commitInterval) {
+        this.commitInterval = commitInterval;
+        return this;
+    }
+
+    /**
+     * @return the time in milliseconds between two commits when the commit interval is not fixed
+     */
+    public long getCommitTime() {
+        return commitTime;
+    }
+
+    /**
+     * @param commitTime the time in milliseconds between two commits when the commit interval is not fixed
+     * @return these options
+     */
+    public BulkLoadOptions setCommitTime(long commitTime) {
+        this.commitTime = commitTime;
+        return this;
+    }
+
+    /**
+     * @return true if the secondary indexes are dropped before the load and created again after
+     */
+    public boolean isRebuildIndexes() {
+        return rebuildIndexes;
+    }
+
+    /**
+     * The indexes of the primary key and of the constraints are kept.
+     * @param rebuildIndexes true to drop the secondary indexes before the load and create them again after
+     * @return these options
+     */
+    public BulkLoadOptions setRebuildIndexes(boolean rebuildIndexes) {
+        this.rebuildIndexes = rebuildIndexes;
+        return this;
+    }
+
+    /**
+     * @return the listener of the progress or null
+     */
+    public BulkLoadListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @param listener the listener of the progress
+     * @return these options
+     */
+    public BulkLoadOptions setListener(BulkLoadListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import java.io.Reader;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+
+/**
+ * Bulk insert of rows in a table, obtained with connection.unwrap(BulkLoader.class) on a connection of the driver.
+ * The rows are inserted with batches whose size is adjusted to the measured throughput and are committed by intervals.
+ * The auto-commit mode of the connection is restored at the end of the load.
+ * @author Florent Benoit
+ */
+public interface BulkLoader {
+
+    /**
+     * Inserts the given rows.
+     * @param table the name of the table
+     * @param columns the columns of the values of each row
+     * @param rows the rows, each row gives the values of the columns
+     * @param options the options of the load
+     * @return the number of inserted rows
+     * @throws SQLException if a row can't be inserted, the rows of the current commit interval are rolled back
+     */
+    long load(String table, String[] columns, Iterator<Object[]> rows, BulkLoadOptions options) throws SQLException;
+
+    /**
+     * Inserts the rows of a result set (for example read from another database).
+     * @param table the name of the table
+     * @param columns the columns of the table receiving the columns of the result set (in the same order) or null to use the labels of the result set
+     * @param rows the rows to insert, the result set is not closed by this method
+     * @param options the options of the load
+     * @return the number of inserted rows
+     * @throws SQLException if a row can't be inserted, the rows of the current commit interval are rolled back
+     */
+    long load(String table, String[] columns, ResultSet rows, BulkLoadOptions options) throws SQLException;
+
+    /**
+     * Inserts the lines of a CSV stream (the first line gives the names of the columns if columns is null).
+     * @param table the name of the table
+     * @param columns the columns of the values of each line or null to use the header of the CSV
+     * @param csv the CSV stream, it is closed by this method
+     * @param options the options of the load
+     * @return the number of inserted rows
+     * @throws SQLException if the CSV can't be read or a row can't be inserted
+     */
+    long loadCsv(String table, String[] columns, Reader csv, BulkLoadOptions options) throws SQLException;
+
+}
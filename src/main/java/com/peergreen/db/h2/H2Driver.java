@@ -12,43 +12,120 @@
 package com.peergreen.db.h2;
 
 import java.io.File;
-import java.lang.reflect.Proxy;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.DriverPropertyInfo;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Instantiate;
 import org.apache.felix.ipojo.annotations.Invalidate;
+import org.apache.felix.ipojo.annotations.Property;
 import org.apache.felix.ipojo.annotations.Validate;
-import org.h2.engine.Constants;
 import org.h2.jdbc.JdbcConnection;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceRegistration;
 
-import com.peergreen.db.h2.internal.H2ConnectionInvocationHandler;
+import com.peergreen.db.h2.internal.AdmissionControl;
+import com.peergreen.db.h2.internal.ConnectionURL;
+import com.peergreen.db.h2.internal.DatabaseBackup;
+import com.peergreen.db.h2.internal.DatabaseEntry;
+import com.peergreen.db.h2.internal.DatabaseTemplate;
+import com.peergreen.db.h2.internal.DriverSettings;
+import com.peergreen.db.h2.internal.DriverStatistics;
+import com.peergreen.db.h2.internal.FileStore;
+import com.peergreen.db.h2.internal.H2Connection;
+import com.peergreen.db.h2.internal.H2ConnectionPool;
+import com.peergreen.db.h2.internal.H2ConnectionReference;
 import com.peergreen.db.h2.internal.H2Server;
 import com.peergreen.db.h2.internal.H2ServerException;
+import com.peergreen.db.h2.internal.MemoryDatabaseEntry;
+import com.peergreen.db.h2.internal.QueryLog;
+import com.peergreen.db.h2.internal.ReplicaSet;
+import com.peergreen.db.h2.internal.ServerEntry;
+import com.peergreen.db.h2.internal.SharedTcpServers;
+import com.peergreen.db.h2.internal.StatementCache;
+import com.peergreen.db.h2.internal.WarmUpEntry;
 
 /**
  * Peergreen H2 driver that allows to create on-the fly the required database
  * @author Florent Benoit
  */
-@Component(factoryMethod = "instance")
+@Component(factoryMethod = "instance", managedservice = "com.peergreen.db.h2")
 @Instantiate
 public class H2Driver implements Driver {
 
+    private static final Logger LOGGER = Logger.getLogger(H2Driver.class.getName());
+
+    /**
+     * Default time in milliseconds given to the opened connections to be closed when the driver is invalidated.
+     */
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT = 10000L;
+
+    /**
+     * Maximum number of servers stopped at the same time.
+     */
+    private static final int MAX_SHUTDOWN_THREADS = 16;
+
+    /**
+     * Time in milliseconds between two checks of the connections of a server being stopped.
+     */
+    private static final long DRAIN_POLL_INTERVAL = 10L;
+
+    /**
+     * Time in milliseconds given to a server to stop once its connections are closed.
+     */
+    private static final long STOP_WAIT_TIME = 1000L;
+
+    /**
+     * Time in milliseconds between two checks of the leaked connections.
+     */
+    private static final long LEAK_CHECK_PERIOD = 1000L;
+
+    /**
+     * Time in milliseconds between two evictions of the statistics of the least recently used SQL statements.
+     */
+    private static final long QUERY_EVICTION_PERIOD = 1000L;
+
     private static H2Driver INSTANCE = new H2Driver();
 
     static {
@@ -66,26 +143,156 @@ public class H2Driver implements Driver {
         return INSTANCE;
     }
 
-    private static final String PGH2_START_URL = "jdbc:pg+h2:";
-
-    private static final String PGH2_START_TCP_URL_LOCALHOST = PGH2_START_URL.concat("tcp://localhost:");
-
     /**
      * Wrapped driver.
      */
     private Driver wrappedDriver;
 
-    private final Map<Integer, H2Server> servers = new HashMap<>();
+    /**
+     * Servers started by the driver with their number of connections, by port number.
+     */
+    private final ConcurrentMap<Integer, ServerEntry> servers = new ConcurrentHashMap<>();
 
-    // map : <port numner> <---> number of connections to this port number base
-    private final Map<Integer, Integer> connectionsByPortNumber = new HashMap<>();
+    /**
+     * In-memory databases created by the driver with their number of connections, by name.
+     */
+    private final ConcurrentMap<String, MemoryDatabaseEntry> memoryDatabases = new ConcurrentHashMap<>();
 
-    private File rootDir;
+    /**
+     * Templates of new databases registered on the driver (database path without suffix), by name.
+     */
+    private final ConcurrentMap<String, File> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Pool of physical connections (used when the POOL_MAX_SIZE setting is set).
+     */
+    private final H2ConnectionPool pool = new H2ConnectionPool();
+
+    /**
+     * Statistics of the driver.
+     */
+    private final DriverStatistics statistics = new DriverStatistics();
+
+    /**
+     * OSGi registration of the statistics.
+     */
+    private ServiceRegistration<H2DriverStatisticsMXBean> statisticsRegistration;
+
+    /**
+     * Stops the servers that stay idle past their idle timeout.
+     */
+    private final ScheduledThreadPoolExecutor reaper;
+
+    /**
+     * Compacts the idle databases in a low priority thread.
+     */
+    private final ThreadPoolExecutor compactor;
+
+    /**
+     * Refreshes the read-only replicas in a low priority thread, a long snapshot doesn't delay the tasks of the reaper.
+     */
+    private final ScheduledThreadPoolExecutor replicaRefresher;
+
+    /**
+     * Receives the references of the connections garbage collected without being closed.
+     */
+    private final ReferenceQueue<H2Connection> leakQueue = new ReferenceQueue<>();
+
+    /**
+     * True once a connection has been opened with the MAX_HOLD_TIME setting, the opened connections are then checked by the reaper.
+     */
+    private volatile boolean holdTimeChecks;
+
+    /**
+     * Physical servers shared by the ports (created with the first port using the SHARED_SERVERS setting).
+     */
+    private SharedTcpServers sharedServers;
+
+    /**
+     * Databases to open at the validation (set by the configuration, else the system property is used).
+     */
+    private String warmUpConfiguration;
 
-    private final Lock lock = new ReentrantReadWriteLock().writeLock();
+    /**
+     * Latches of the ports being warmed up or restored. Connections on these ports wait for the end of the warm-up or of the restore.
+     */
+    private final ConcurrentMap<Integer, CountDownLatch> warmingPorts = new ConcurrentHashMap<>();
+
+    /**
+     * Released when all the databases to warm up have been opened.
+     */
+    private volatile CountDownLatch ready = new CountDownLatch(0);
+
+    /**
+     * Executor of the warm-up (null if no warm-up is running).
+     */
+    private ExecutorService warmUpExecutor;
+
+    /**
+     * Connections keeping the warmed up databases opened until the invalidation.
+     */
+    private final List<Connection> warmUpConnections = new ArrayList<>();
+
+    /**
+     * Latches of the ports added by the running warm-up in warmingPorts, released if the warm-up is interrupted.
+     */
+    private final Map<Integer, CountDownLatch> warmUpLatches = new HashMap<>();
+
+    /**
+     * Time in milliseconds given to the connections to be closed when the driver is invalidated (negative if not configured).
+     */
+    private long shutdownTimeout = -1;
+
+    /**
+     * True while the driver is being invalidated (servers being stopped), new connections are rejected.
+     */
+    private volatile boolean invalidating;
+
+    private File rootDir;
 
     public H2Driver() {
         wrappedDriver = new org.h2.Driver();
+        reaper = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Peergreen H2 driver reaper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reaper.setRemoveOnCancelPolicy(true);
+        compactor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Peergreen H2 driver compactor");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        compactor.allowCoreThreadTimeOut(true);
+        replicaRefresher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Peergreen H2 driver replica refresher");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        replicaRefresher.setRemoveOnCancelPolicy(true);
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkLeaks();
+            }
+        }, LEAK_CHECK_PERIOD, LEAK_CHECK_PERIOD, TimeUnit.MILLISECONDS);
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                statistics.evictQueries();
+            }
+        }, QUERY_EVICTION_PERIOD, QUERY_EVICTION_PERIOD, TimeUnit.MILLISECONDS);
         resolveRootDirectory();
     }
 
@@ -106,8 +313,357 @@ public class H2Driver implements Driver {
      */
     @Validate
     public void validate() throws SQLException {
+        invalidating = false;
         // It doesn't matter if we register this Driver instance multiple times
         DriverManager.registerDriver(this);
+        registerStatistics();
+        warmUp();
+    }
+
+    /**
+     * Sets the databases to open when the driver is validated.
+     * @param warmUp the pg+h2 URLs separated by commas or white spaces, the USER and PASSWORD settings are used to provision the user
+     */
+    @Property(name = "warmup")
+    public void setWarmUp(String warmUp) {
+        this.warmUpConfiguration = warmUp;
+    }
+
+    /**
+     * Sets the time given to the opened connections to be closed when the driver is invalidated.
+     * @param shutdownTimeout the time in milliseconds, the connections still opened after this time are closed by force
+     */
+    @Property(name = "shutdowntimeout")
+    public void setShutdownTimeout(long shutdownTimeout) {
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    /**
+     * @return the time in milliseconds given to the opened connections to be closed (configuration, else system property, else 10 seconds)
+     */
+    protected long getShutdownTimeout() {
+        if (shutdownTimeout >= 0) {
+            return shutdownTimeout;
+        }
+        return Long.getLong(DriverSettings.SYSTEM_PROPERTY_PREFIX.concat(DriverSettings.SHUTDOWN_TIMEOUT), DEFAULT_SHUTDOWN_TIMEOUT);
+    }
+
+    /**
+     * Opens in parallel the databases of the configuration (or of the com.peergreen.db.h2.WARMUP system property).
+     * A connection is kept on each database until the invalidation so the servers stay started and the databases opened.
+     */
+    protected synchronized void warmUp() {
+        String configuration = warmUpConfiguration;
+        if (configuration == null) {
+            configuration = System.getProperty(DriverSettings.SYSTEM_PROPERTY_PREFIX.concat(DriverSettings.WARMUP));
+        }
+        List<WarmUpEntry> entries = new ArrayList<>();
+        for (WarmUpEntry entry : WarmUpEntry.parse(configuration)) {
+            if (entry.getUrl().startsWith(ConnectionURL.PGH2_START_URL)) {
+                entries.add(entry);
+            } else {
+                LOGGER.log(Level.WARNING, "Ignoring the database to warm up {0}, it is not a pg+h2 URL", entry.getUrl());
+            }
+        }
+        if (entries.isEmpty() || warmUpExecutor != null) {
+            return;
+        }
+
+        // connections on these ports will wait for the warm-up
+        Map<Integer, Integer> databasesByPort = new HashMap<>();
+        for (WarmUpEntry entry : entries) {
+            int portNumber = new ConnectionURL(entry.getUrl()).getPortNumber();
+            Integer count = databasesByPort.get(portNumber);
+            databasesByPort.put(portNumber, count == null ? 1 : count + 1);
+        }
+        final Map<Integer, CountDownLatch> portLatches = new HashMap<>();
+        for (Map.Entry<Integer, Integer> entry : databasesByPort.entrySet()) {
+            CountDownLatch portLatch = new CountDownLatch(entry.getValue());
+            warmingPorts.put(entry.getKey(), portLatch);
+            portLatches.put(entry.getKey(), portLatch);
+        }
+        synchronized (warmUpConnections) {
+            warmUpLatches.putAll(portLatches);
+        }
+        final CountDownLatch readyLatch = new CountDownLatch(entries.size());
+        ready = readyLatch;
+        statistics.setReady(false);
+
+        warmUpExecutor = Executors.newFixedThreadPool(Math.min(entries.size(), Math.max(2, Runtime.getRuntime().availableProcessors())), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Peergreen H2 driver warm-up");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (final WarmUpEntry entry : entries) {
+            warmUpExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    warmUp(entry, portLatches, readyLatch);
+                }
+            });
+        }
+        warmUpExecutor.shutdown();
+    }
+
+    /**
+     * Opens the database of the given entry and counts it down on the latches of the warm-up.
+     */
+    private void warmUp(WarmUpEntry entry, Map<Integer, CountDownLatch> portLatches, CountDownLatch readyLatch) {
+        ConnectionURL connectionURL = new ConnectionURL(entry.getUrl());
+        try {
+            Connection connection = connect(connectionURL, entry.getInfo(), System.nanoTime());
+            boolean keep;
+            synchronized (warmUpConnections) {
+                keep = warmUpExecutor != null;
+                if (keep) {
+                    warmUpConnections.add(connection);
+                }
+            }
+            if (!keep) {
+                // driver invalidated during the warm-up
+                connection.close();
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unable to warm up the database " + entry.getUrl(), e);
+        } finally {
+            // latch of this warm-up, warmingPorts may hold the latch of a restore once the warm-up is released
+            CountDownLatch portLatch = portLatches.get(connectionURL.getPortNumber());
+            portLatch.countDown();
+            if (portLatch.getCount() == 0) {
+                warmingPorts.remove(connectionURL.getPortNumber(), portLatch);
+            }
+            readyLatch.countDown();
+            if (readyLatch.getCount() == 0 && ready == readyLatch) {
+                statistics.setReady(true);
+            }
+        }
+    }
+
+    /**
+     * Closes the connections opened by the warm-up. If the warm-up is still running, the databases not yet opened are dropped
+     * and the connects waiting for them are released.
+     */
+    protected void releaseWarmUp() {
+        List<Connection> connections;
+        Map<Integer, CountDownLatch> portLatches;
+        synchronized (warmUpConnections) {
+            if (warmUpExecutor != null) {
+                warmUpExecutor.shutdownNow();
+                warmUpExecutor = null;
+            }
+            connections = new ArrayList<>(warmUpConnections);
+            warmUpConnections.clear();
+            portLatches = new HashMap<>(warmUpLatches);
+            warmUpLatches.clear();
+        }
+        // tasks dropped by shutdownNow() won't count down their latches
+        for (Map.Entry<Integer, CountDownLatch> entry : portLatches.entrySet()) {
+            warmingPorts.remove(entry.getKey(), entry.getValue());
+            releaseLatch(entry.getValue());
+        }
+        CountDownLatch readyLatch = ready;
+        if (readyLatch.getCount() > 0) {
+            ready = new CountDownLatch(0);
+            releaseLatch(readyLatch);
+            statistics.setReady(true);
+        }
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Unable to close a warm-up connection", e);
+            }
+        }
+    }
+
+    /**
+     * Releases all the threads waiting on the given latch.
+     */
+    private static void releaseLatch(CountDownLatch latch) {
+        while (latch.getCount() > 0) {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Registers a template that can be used by the TEMPLATE setting to create new databases.
+     * @param name the name of the template
+     * @param database the path of the template database (without the .h2.db suffix), it must not be opened while it is registered
+     */
+    public void registerTemplate(String name, File database) {
+        templates.put(name, database);
+    }
+
+    /**
+     * Unregisters a template.
+     * @param name the name of the template
+     */
+    public void unregisterTemplate(String name) {
+        templates.remove(name);
+    }
+
+    /**
+     * Writes a compressed and consistent backup (zip) of a database of a local port while the database keeps serving.
+     * The server of the port is started if needed and H2 writes the backup in a temporary file of the root directory which is then streamed.
+     * @param portNumber the port of the database
+     * @param databaseName the name of the database
+     * @param out the stream receiving the backup (not closed by this method)
+     * @param maxBytesPerSecond the maximum number of bytes written per second by H2 and to the stream (0 if not limited)
+     * @throws SQLException if the database doesn't exist or if the backup can't be done
+     * @throws IOException if the backup can't be written
+     */
+    public void backup(int portNumber, String databaseName, OutputStream out, long maxBytesPerSecond) throws SQLException, IOException {
+        if (!DatabaseTemplate.exists(new File(H2Server.getDatabaseDir(rootDir, portNumber), databaseName))) {
+            throw new SQLException("The database '" + databaseName + "' on port " + portNumber + " doesn't exist");
+        }
+        ConnectionURL connectionURL = new ConnectionURL(ConnectionURL.PGH2_START_TCP_URL_LOCALHOST + portNumber + "/" + databaseName);
+        ServerEntry entry = acquireServer(connectionURL, new Properties());
+        try {
+            // same file system as the opened connections
+            DatabaseEntry database = entry.getDatabase(databaseName);
+            FileStore fileStore = database.getFileStore();
+            if (fileStore == null) {
+                fileStore = FileStore.DEFAULT;
+            }
+            // not compacted during the backup
+            database.beginOpen();
+            try {
+                DatabaseBackup.backup(entry.getServer(), fileStore.getDatabasePath(databaseName), out, maxBytesPerSecond);
+            } finally {
+                database.openDone();
+            }
+        } finally {
+            releaseServer(portNumber, entry);
+        }
+    }
+
+    /**
+     * Writes a backup of a database of a local port in a file.
+     * @param portNumber the port of the database
+     * @param databaseName the name of the database
+     * @param backupFile the zip file to write
+     * @param maxBytesPerSecond the maximum number of bytes written per second (0 if not limited)
+     * @throws SQLException if the database doesn't exist or if the backup can't be done
+     * @throws IOException if the backup can't be written
+     * @see #backup(int, String, OutputStream, long)
+     */
+    public void backup(int portNumber, String databaseName, File backupFile, long maxBytesPerSecond) throws SQLException, IOException {
+        try (OutputStream out = new FileOutputStream(backupFile)) {
+            backup(portNumber, databaseName, out, maxBytesPerSecond);
+        }
+    }
+
+    /**
+     * Restores a backup of a database in the directory of a port. The server of the port must be stopped,
+     * connections on the port and starts of its server wait until the end of the restore. The existing files of the database are replaced.
+     * @param portNumber the port of the database
+     * @param databaseName the name of the database
+     * @param in the backup written by the backup method (not closed by this method)
+     * @throws SQLException if the server of the port is started or if the backup doesn't contain the database
+     * @throws IOException if the backup can't be read or the files can't be written
+     */
+    public void restore(int portNumber, String databaseName, InputStream in) throws SQLException, IOException {
+        CountDownLatch latch = new CountDownLatch(1);
+        if (warmingPorts.putIfAbsent(portNumber, latch) != null) {
+            throw new SQLException("The port " + portNumber + " is being warmed up or restored");
+        }
+        try {
+            // retired entry: the server can't be started until the end of the restore, the starts wait for its stop
+            ServerEntry restoring = new ServerEntry(new H2Server(rootDir, portNumber), 0, statistics.getPortMetrics(portNumber));
+            restoring.retire();
+            if (servers.putIfAbsent(portNumber, restoring) != null) {
+                throw new SQLException("The H2 server on port " + portNumber + " is started, it must be stopped before a restore");
+            }
+            try {
+                if (DatabaseBackup.restore(in, H2Server.getDatabaseDir(rootDir, portNumber), databaseName) == 0) {
+                    throw new SQLException("The backup doesn't contain the database '" + databaseName + "'");
+                }
+            } finally {
+                servers.remove(portNumber, restoring);
+                restoring.stopCompleted();
+            }
+        } finally {
+            warmingPorts.remove(portNumber, latch);
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Restores a backup file of a database in the directory of a port.
+     * @param portNumber the port of the database
+     * @param databaseName the name of the database
+     * @param backupFile the zip file written by backup
+     * @throws SQLException if the server of the port is started or if the backup doesn't contain the database
+     * @throws IOException if the backup can't be read or the files can't be written
+     * @see #restore(int, String, InputStream)
+     */
+    public void restore(int portNumber, String databaseName, File backupFile) throws SQLException, IOException {
+        try (InputStream in = new FileInputStream(backupFile)) {
+            restore(portNumber, databaseName, in);
+        }
+    }
+
+    /**
+     * @return true if all the databases to warm up have been opened (or have failed)
+     */
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    /**
+     * Waits until all the databases to warm up have been opened (or have failed).
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the driver is ready, false if the timeout elapsed
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    /**
+     * Register the statistics as an MBean and as an OSGi service.
+     */
+    private synchronized void registerStatistics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(statistics, new ObjectName(H2DriverStatisticsMXBean.OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // already registered
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Unable to register the statistics MBean", e);
+        }
+
+        Bundle bundle = FrameworkUtil.getBundle(H2Driver.class);
+        if (bundle != null && bundle.getBundleContext() != null && statisticsRegistration == null) {
+            statisticsRegistration = bundle.getBundleContext().registerService(H2DriverStatisticsMXBean.class, statistics, null);
+        }
+    }
+
+    /**
+     * Unregister the statistics MBean and OSGi service.
+     */
+    private synchronized void unregisterStatistics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(H2DriverStatisticsMXBean.OBJECT_NAME));
+        } catch (InstanceNotFoundException e) {
+            // not registered
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Unable to unregister the statistics MBean", e);
+        }
+        if (statisticsRegistration != null) {
+            statisticsRegistration.unregister();
+            statisticsRegistration = null;
+        }
+    }
+
+    /**
+     * @return the statistics of the driver
+     */
+    public H2DriverStatisticsMXBean getStatistics() {
+        return statistics;
     }
 
     /**
@@ -115,16 +671,141 @@ public class H2Driver implements Driver {
      */
     @Invalidate
     public void invalidate() throws SQLException {
-        // stop all database still running
-        Collection<H2Server> servers = this.servers.values();
-        for (H2Server server : servers) {
-            server.stop();
+        invalidating = true;
+        try {
+            releaseWarmUp();
+
+            // stop all database still running
+            stopServers(new ArrayList<>(servers.keySet()), getShutdownTimeout());
+            dropMemoryDatabases();
+        } finally {
+            unregisterStatistics();
+            DriverManager.deregisterDriver(this);
+            // connects are only rejected while the servers are stopped, the instance stays usable
+            invalidating = false;
+        }
+    }
+
+    /**
+     * Stops in parallel the servers of the given ports. The opened connections are given the timeout to be closed,
+     * then they're closed by force and the servers are stopped. This method waits at most the timeout plus the time given to the servers to stop
+     * (once per group of servers stopped at the same time) and one more second.
+     * @param portNumbers the ports to stop
+     * @param timeout the time in milliseconds given to the connections to be closed
+     * @return the time in milliseconds spent to stop each server (servers not stopped in time are not reported)
+     */
+    protected Map<Integer, Long> stopServers(Collection<Integer> portNumbers, final long timeout) {
+        final Map<Integer, Long> stopTimes = new ConcurrentHashMap<>();
+        if (portNumbers.isEmpty()) {
+            return stopTimes;
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        int threads = Math.min(portNumbers.size(), MAX_SHUTDOWN_THREADS);
+        // servers beyond the threads are stopped after the deadline, each one waiting for its stop
+        int groups = (portNumbers.size() + threads - 1) / threads;
+        long maxWaitTime = timeout + groups * STOP_WAIT_TIME + STOP_WAIT_TIME;
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Peergreen H2 driver shutdown");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (final Integer portNumber : portNumbers) {
+            final ServerEntry entry = servers.get(portNumber);
+            if (entry == null) {
+                continue;
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long stopTime = shutdownServer(portNumber, entry, deadline);
+                    if (stopTime >= 0) {
+                        stopTimes.put(portNumber, stopTime);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(maxWaitTime, TimeUnit.MILLISECONDS)) {
+                LOGGER.log(Level.WARNING, "Some H2 servers have not been stopped in {0} ms", maxWaitTime);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new LinkedHashMap<>(stopTimes);
+    }
+
+    /**
+     * Drains the connections of the given server until the deadline, closes by force the remaining ones and stops the server.
+     * @return the time in milliseconds spent to stop the server or -1 if it has not been stopped
+     */
+    private long shutdownServer(int portNumber, ServerEntry entry, long deadline) {
+        long startTime = System.nanoTime();
+
+        // scheduled compactions don't keep the server
+        for (DatabaseEntry database : entry.getDatabases()) {
+            if (database.cancelCompaction()) {
+                releaseServer(portNumber, entry);
+            }
+        }
+
+        // drain
+        while (entry.getReferences() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(Math.min(DRAIN_POLL_INTERVAL, Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
         }
-        DriverManager.deregisterDriver(this);
+
+        // force
+        List<H2ConnectionReference> connections = entry.getConnections();
+        for (H2ConnectionReference connection : connections) {
+            try {
+                forceClose(connection);
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Unable to close a connection on port " + portNumber, e);
+            }
+        }
+
+        // stop, unless the last connection has already stopped it
+        stopServer(portNumber, entry);
+        try {
+            if (!entry.awaitStopped(Math.max(0, deadline - System.nanoTime()) + TimeUnit.MILLISECONDS.toNanos(STOP_WAIT_TIME), TimeUnit.NANOSECONDS)) {
+                LOGGER.log(Level.WARNING, "H2 server on port {0} has not been stopped", portNumber);
+                return -1;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        long stopTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        LOGGER.log(Level.INFO, "H2 server on port {0} stopped in {1} ms ({2} connections closed by force)",
+                new Object[] {String.valueOf(portNumber), stopTime, connections.size()});
+        return stopTime;
     }
 
 
 
+    /**
+     * Closes by force the connections of the in-memory databases, the databases are dropped with their last connection.
+     */
+    private void dropMemoryDatabases() {
+        for (MemoryDatabaseEntry memoryDatabase : new ArrayList<>(memoryDatabases.values())) {
+            for (H2ConnectionReference connection : memoryDatabase.getConnections()) {
+                try {
+                    forceClose(connection);
+                } catch (SQLException e) {
+                    LOGGER.log(Level.FINE, "Unable to close a connection on the in-memory database " + memoryDatabase.getName(), e);
+                }
+            }
+        }
+    }
+
     @Override
     public Connection connect(String url, Properties info) throws SQLException {
 
@@ -135,109 +816,789 @@ public class H2Driver implements Driver {
             return null;
         }
 
-        String databaseName = null;
-        int portNumber = -1;
-        if (url.startsWith(PGH2_START_TCP_URL_LOCALHOST)) {
-            String rightPart = url.substring(PGH2_START_TCP_URL_LOCALHOST.length());
-            String portValue = rightPart.substring(0, rightPart.indexOf("/"));
-            portNumber = Integer.parseInt(portValue);
-            int indexDatabase = url.indexOf(portValue.concat("/"));
-            int end = url.indexOf(";");
-            if (end == -1) {
-                databaseName = url.substring(indexDatabase + portValue.concat("/").length());
-            } else {
-                databaseName  = url.substring(indexDatabase + portValue.concat("/").length(), end);
+        long startTime = System.nanoTime();
+        if (invalidating) {
+            throw new SQLException("The driver is being stopped");
+        }
+        ConnectionURL connectionURL = new ConnectionURL(url);
+        if (!warmingPorts.isEmpty() && connectionURL.isManaged()) {
+            long timeout = connectionURL.getLongSetting(DriverSettings.ADMISSION_TIMEOUT, info, 30000L);
+            awaitWarmUp(connectionURL.getPortNumber(), startTime + TimeUnit.MILLISECONDS.toNanos(timeout));
+        }
+        return connect(connectionURL, info, startTime);
+    }
+
+    /**
+     * Waits for the end of the warm-up or of the restore of the given port (if the port is being warmed up or restored).
+     * @param deadline the value of System.nanoTime() after which the connect fails
+     */
+    private void awaitWarmUp(int portNumber, long deadline) throws SQLException {
+        CountDownLatch latch = warmingPorts.get(portNumber);
+        if (latch != null) {
+            try {
+                if (!latch.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    throw new SQLException("Timeout while waiting for the warm-up or the restore of the port " + portNumber);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for the warm-up of the port " + portNumber, e);
             }
         }
+    }
 
-        // needs to map pg+h2 url to a h2 url
-        String h2Url = "jdbc:h2:".concat(url.substring(PGH2_START_URL.length()));
+    /**
+     * Connects to the database of the given URL.
+     */
+    private Connection connect(ConnectionURL connectionURL, Properties info, long startTime) throws SQLException {
+        int portNumber = connectionURL.getPortNumber();
+        String databaseName = connectionURL.getDatabaseName();
+        long slowQueryThreshold = connectionURL.getLongSetting(DriverSettings.SLOW_QUERY_THRESHOLD, info, -1);
+        boolean queryStatistics = connectionURL.getBooleanSetting(DriverSettings.QUERY_STATISTICS, info, false);
+        int statementCacheSize = connectionURL.getIntSetting(DriverSettings.STATEMENT_CACHE_SIZE, info, 0);
+        int fetchSize = connectionURL.getIntSetting(DriverSettings.FETCH_SIZE, info, 0);
+        int resultMemoryRows = connectionURL.getIntSetting(DriverSettings.RESULT_MEMORY_ROWS, info, 0);
+        long validationInterval = connectionURL.getLongSetting(DriverSettings.VALIDATION_INTERVAL, info, 0);
+        int readReplicas = connectionURL.getIntSetting(DriverSettings.READ_REPLICAS, info, 0);
+        long compactIdleTime = connectionURL.getLongSetting(DriverSettings.COMPACT_IDLE_TIME, info, 0);
+        long compactMinSize = connectionURL.getLongSetting(DriverSettings.COMPACT_MIN_SIZE, info, 1024);
+        long maxHoldTime = connectionURL.getLongSetting(DriverSettings.MAX_HOLD_TIME, info, 0);
+        int leakTraceSampling = connectionURL.getIntSetting(DriverSettings.LEAK_TRACE_SAMPLING, info, 0);
+        int maxConnections = connectionURL.getIntSetting(DriverSettings.MAX_CONNECTIONS, info, 0);
+        int maxDatabaseConnections = connectionURL.getIntSetting(DriverSettings.MAX_DATABASE_CONNECTIONS, info, 0);
+        FileStore fileStore = FileStore.get(connectionURL, info);
+        String databasePath = fileStore.getDatabasePath(databaseName);
 
         //needs to start a database if access is remote
-        String name = url.substring(Constants.START_URL.length());
-        if (name.startsWith("h2:tcp://localhost:")) {
-            lock.lock();
-            try {
-                // Here is the example of rewritten URL
-                // jdbc:h2:tcp://localhost:1234/mydatabase
+        String h2Url = connectionURL.getH2Url();
+        ServerEntry entry = null;
+        if (connectionURL.isManaged()) {
+            // Here is the example of rewritten URL
+            // jdbc:h2:tcp://localhost:1234/mydatabase
+            String template = connectionURL.getSetting(DriverSettings.TEMPLATE, info);
+            if (template != null) {
+                // new database is copied before H2 opens it
+                createFromTemplate(portNumber, databaseName, template);
+            }
+            entry = acquireServer(connectionURL, info);
 
-                // needs to start the database if it is not yet started
-                if (!servers.containsKey(portNumber)) {
+            // same JVM, use the database of the server without TCP round-trip
+            if (connectionURL.getBooleanSetting(DriverSettings.EMBEDDED, info, false)) {
+                File databaseFile = new File(entry.getServer().getDatabaseDir(), databaseName);
+                h2Url = "jdbc:h2:".concat(fileStore.getDatabasePath(databaseFile.getAbsolutePath())).concat(connectionURL.getH2Settings());
+            } else {
+                // the physical server may listen on another port
+                h2Url = entry.getServer().getUrl(databasePath).concat(connectionURL.getH2Settings());
+            }
+        }
+        MemoryDatabaseEntry memoryDatabase = null;
+        if (connectionURL.isMemory()) {
+            // jdbc:h2:mem:mydatabase kept alive by the driver until its last connection is closed
+            memoryDatabase = acquireMemoryDatabase(connectionURL, info);
+            h2Url = memoryDatabase.getUrl().concat(connectionURL.getH2Settings());
+        }
+
+        // return a wrapped connection
+        H2Connection wrappedConnection;
+        ReplicaSet replicaSet = null;
+        DatabaseEntry openedDatabase = null;
+        AdmissionControl portAdmission = null;
+        AdmissionControl databaseAdmission = null;
+        try {
+            if (entry != null) {
+                DatabaseEntry database = entry.getDatabase(databaseName);
+                if (maxConnections > 0 || maxDatabaseConnections > 0) {
+                    // fair queues, the limit of the database first so the waiting connects don't hold the places of the port
+                    int admissionQueueSize = connectionURL.getIntSetting(DriverSettings.ADMISSION_QUEUE_SIZE, info, Integer.MAX_VALUE);
+                    long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(connectionURL.getLongSetting(DriverSettings.ADMISSION_TIMEOUT, info, 30000L));
+                    if (maxDatabaseConnections > 0) {
+                        AdmissionControl admission = database.getAdmission(portNumber, maxDatabaseConnections, admissionQueueSize, entry.getMetrics());
+                        admission.acquire(deadline);
+                        databaseAdmission = admission;
+                    }
+                    if (maxConnections > 0) {
+                        AdmissionControl admission = entry.getAdmission(portNumber, maxConnections, admissionQueueSize);
+                        admission.acquire(deadline);
+                        portAdmission = admission;
+                    }
+                }
+                // waits for the end of a compaction of the database
+                database.beginOpen();
+                openedDatabase = database;
+                // a database can't be opened with two file systems
+                FileStore openedFileStore = database.getFileStore();
+                if (!database.isIdle() && openedFileStore != null && openedFileStore != fileStore) {
+                    throw new SQLException("The database '" + databaseName + "' on port " + portNumber + " is already opened with the file store "
+                            + openedFileStore.getValue());
+                }
+                // large results are buffered on disk instead of the heap, the setting applies to the whole database
+                if (database.checkResultMemoryRows(resultMemoryRows)) {
+                    entry.getServer().setMaxMemoryRows(databasePath, resultMemoryRows);
+                    database.setResultMemoryRows(resultMemoryRows);
+                }
+                // users of the databases opened after the start of the server
+                provisionUser(entry, databasePath, info);
+                if (readReplicas > 0) {
+                    replicaSet = getReplicas(connectionURL, info, entry, database, databasePath, readReplicas);
+                }
+            }
+            if (memoryDatabase != null) {
+                memoryDatabase.checkResultMemoryRows(resultMemoryRows);
+                String user = info.getProperty("user");
+                if (user != null) {
+                    memoryDatabase.addUser(user, info.getProperty("password"));
+                }
+            }
+            int poolMaxSize = connectionURL.getIntSetting(DriverSettings.POOL_MAX_SIZE, info, 0);
+            if (connectionURL.isManaged() && poolMaxSize > 0) {
+                // pooled connection
+                int poolMinSize = connectionURL.getIntSetting(DriverSettings.POOL_MIN_SIZE, info, 0);
+                int poolMaxIdle = connectionURL.getIntSetting(DriverSettings.POOL_MAX_IDLE, info, poolMaxSize);
+                H2ConnectionPool.Key key = new H2ConnectionPool.Key(portNumber, databaseName, h2Url, info.getProperty("user"), info.getProperty("password"));
+                Properties poolInfo = new Properties();
+                poolInfo.putAll(info);
+                Connection connection = pool.borrow(key, poolInfo, poolMinSize, poolMaxSize, poolMaxIdle);
+                wrappedConnection = new H2Connection(this, portNumber, databaseName, connection, pool, key);
+                if (statementCacheSize > 0) {
+                    // the statements prepared by the previous users of the physical connection are kept
+                    StatementCache statementCache = pool.getStatementCache(key, connection);
+                    if (statementCache == null) {
+                        statementCache = new StatementCache(statementCacheSize);
+                    }
+                    wrappedConnection.setStatementCache(statementCache);
+                }
+            } else {
+                Connection connection = new JdbcConnection(h2Url, info);
+                wrappedConnection = new H2Connection(this, portNumber, databaseName, connection);
+                if (statementCacheSize > 0) {
+                    wrappedConnection.setStatementCache(new StatementCache(statementCacheSize));
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            // no connection, release the reference on the server
+            if (openedDatabase != null) {
+                openedDatabase.openDone();
+            }
+            if (portAdmission != null) {
+                portAdmission.release();
+            }
+            if (databaseAdmission != null) {
+                databaseAdmission.release();
+            }
+            if (entry != null) {
+                releaseServer(portNumber, entry);
+            }
+            if (memoryDatabase != null) {
+                releaseMemoryDatabase(memoryDatabase);
+            }
+            throw e;
+        }
+        if (fetchSize > 0) {
+            wrappedConnection.setDefaultFetchSize(fetchSize);
+        }
+        // measure the statements ?
+        if (slowQueryThreshold >= 0 || queryStatistics) {
+            wrappedConnection.setQueryLog(new QueryLog(portNumber, databaseName, slowQueryThreshold, queryStatistics ? statistics : null));
+        }
 
-                    // get database
+        if (entry != null && validationInterval > 0) {
+            // isValid answered from the state of the server
+            startHealthProbe(portNumber, entry, validationInterval);
+            wrappedConnection.setValidation(entry, validationInterval);
+        }
+        if (memoryDatabase != null) {
+            wrappedConnection.setMemoryDatabase(memoryDatabase);
+        }
+        if (entry != null || memoryDatabase != null) {
+            // tracked until closed, the stack is captured for a sample of the opens
+            Throwable openStack = null;
+            if (leakTraceSampling > 0 && ThreadLocalRandom.current().nextInt(leakTraceSampling) == 0) {
+                openStack = new Throwable("Connection opened");
+            }
+            if (maxHoldTime > 0) {
+                holdTimeChecks = true;
+            }
+            H2ConnectionReference reference = wrappedConnection.createReference(leakQueue, TimeUnit.MILLISECONDS.toNanos(maxHoldTime), openStack);
+            if (entry != null) {
+                reference.admitted(portAdmission, databaseAdmission);
+                entry.opened(reference);
+                openedDatabase.setCompactPolicy(compactIdleTime, compactMinSize * 1024);
+                openedDatabase.acquire(fileStore);
+                openedDatabase.openDone();
+                entry.getMetrics().connected(startTime);
+            } else {
+                memoryDatabase.opened(reference);
+            }
+        }
+        if (replicaSet != null) {
+            wrappedConnection.setReplicas(replicaSet, info);
+            if (connectionURL.getBooleanSetting(DriverSettings.READONLY_ROUTE, info, false)) {
+                try {
+                    wrappedConnection.setReadOnly(true);
+                } catch (SQLException | RuntimeException e) {
+                    try {
+                        wrappedConnection.close();
+                    } catch (SQLException closeException) {
+                        e.addSuppressed(closeException);
+                    }
+                    throw e;
+                }
+            }
+        }
+        return wrappedConnection;
 
+    }
 
-                    // start server
-                    H2Server h2server = new H2Server(rootDir, portNumber);
+    /**
+     * Creates the given database with the files of the template if the database doesn't exist.
+     * @param portNumber the port of the database
+     * @param databaseName the name of the database
+     * @param template the name of a registered template or of a database of the same port
+     * @throws SQLException if the template is opened or if the template can't be copied
+     */
+    protected void createFromTemplate(int portNumber, String databaseName, String template) throws SQLException {
+        File databaseDir = H2Server.getDatabaseDir(rootDir, portNumber);
+        File database = new File(databaseDir, databaseName);
+        if (DatabaseTemplate.exists(database)) {
+            return;
+        }
+        File templateDatabase = templates.get(template);
+        DatabaseEntry templateEntry = null;
+        if (templateDatabase == null) {
+            // database of the port, its files are only consistent when it is closed
+            ServerEntry entry = servers.get(portNumber);
+            if (entry != null) {
+                // connections on the template wait for the end of the copy
+                templateEntry = entry.getDatabase(template);
+                if (!templateEntry.beginCopy()) {
+                    throw new SQLException("The template database '" + template + "' on port " + portNumber + " is opened or being compacted");
+                }
+            }
+            templateDatabase = new File(databaseDir, template);
+        }
+        try {
+            if (templateEntry != null) {
+                pool.evict(portNumber, template);
+            }
+            long startTime = System.nanoTime();
+            if (DatabaseTemplate.copy(templateDatabase, database)) {
+                LOGGER.log(Level.FINE, "Database {0} on port {1} created from the template {2} in {3} ms", new Object[] {databaseName,
+                        String.valueOf(portNumber), template, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)});
+            }
+        } finally {
+            if (templateEntry != null) {
+                templateEntry.copyDone();
+            }
+        }
+    }
 
-                    // do we have a user ?
-                    String user = info.getProperty("user");
-                    if (user != null) {
-                        String password = info.getProperty("password");
-                        h2server.addUser(user, password, databaseName);
+    /**
+     * Adds a reference on the server of the given port. The server is started if it is not yet started.
+     * Only the connections on the same port number are waiting while a server is started or stopped.
+     * @param connectionURL the URL of the connection
+     * @param info the connection properties
+     * @return the entry of the server
+     * @throws SQLException if the server can't be started
+     */
+    protected ServerEntry acquireServer(ConnectionURL connectionURL, Properties info) throws SQLException {
+        int portNumber = connectionURL.getPortNumber();
+        for (;;) {
+            ServerEntry entry = servers.get(portNumber);
+            if (entry == null) {
+                // start server
+                int sharedServersSize = connectionURL.getIntSetting(DriverSettings.SHARED_SERVERS, info, 0);
+                H2Server h2server;
+                if (sharedServersSize > 0) {
+                    h2server = new H2Server(rootDir, portNumber, getSharedServers(sharedServersSize));
+                } else {
+                    h2server = new H2Server(rootDir, portNumber);
+                }
+                long idleTimeout = connectionURL.getLongSetting(DriverSettings.SERVER_IDLE_TIMEOUT, info, 0);
+                ServerEntry newEntry = new ServerEntry(h2server, idleTimeout, statistics.getPortMetrics(portNumber));
+                entry = servers.putIfAbsent(portNumber, newEntry);
+                if (entry == null) {
+                    startServer(portNumber, FileStore.get(connectionURL, info).getDatabasePath(connectionURL.getDatabaseName()), info, newEntry);
+                    return newEntry;
+                }
+            }
 
+            // else it is already started (or being started) so lets the connection to be done
+            if (entry.acquire()) {
+                // only count the connects that are really waiting
+                long waitTime = entry.isStartDone() ? 0 : System.nanoTime();
+                try {
+                    entry.awaitStarted();
+                } finally {
+                    if (waitTime != 0) {
+                        entry.getMetrics().waited(waitTime);
                     }
+                }
+                return entry;
+            }
 
-                    servers.put(portNumber, h2server);
+            // server is being stopped, wait and start a new one
+            long waitTime = System.nanoTime();
+            try {
+                entry.awaitStopped();
+            } finally {
+                entry.getMetrics().waited(waitTime);
+            }
+            servers.remove(portNumber, entry);
+        }
+    }
+
+    /**
+     * Adds a reference on the in-memory database of the given URL. The database is created if it doesn't exist.
+     * The user of the connection creating the database is its administrator.
+     * @param connectionURL the URL of the connection
+     * @param info the connection properties
+     * @return the entry of the in-memory database
+     * @throws SQLException if the database can't be created
+     */
+    protected MemoryDatabaseEntry acquireMemoryDatabase(ConnectionURL connectionURL, Properties info) throws SQLException {
+        String name = connectionURL.getMemoryDatabaseName();
+        for (;;) {
+            MemoryDatabaseEntry memoryDatabase = memoryDatabases.get(name);
+            if (memoryDatabase == null) {
+                long maxSize = connectionURL.getLongSetting(DriverSettings.MEMORY_MAX_SIZE, info, 0);
+                int resultMemoryRows = connectionURL.getIntSetting(DriverSettings.RESULT_MEMORY_ROWS, info, 0);
+                MemoryDatabaseEntry newMemoryDatabase = new MemoryDatabaseEntry(name, maxSize, resultMemoryRows);
+                memoryDatabase = memoryDatabases.putIfAbsent(name, newMemoryDatabase);
+                if (memoryDatabase == null) {
                     try {
-                        h2server.start();
-                    } catch (H2ServerException e) {
-                        throw new SQLException("Unable to start the associated H2 server", e);
+                        newMemoryDatabase.create(connectionURL.getH2Settings(), info);
+                    } catch (SQLException | RuntimeException e) {
+                        memoryDatabases.remove(name, newMemoryDatabase);
+                        newMemoryDatabase.createFailed(e);
+                        throw e;
                     }
+                    newMemoryDatabase.createSucceeded();
+                    return newMemoryDatabase;
                 }
-                // else it is already started so lets the connection to be done
+            }
 
-                // increment counter
-                Integer count = connectionsByPortNumber.get(portNumber);
-                if (count == null) {
-                    // first connection, set it to 1
-                    connectionsByPortNumber.put(portNumber, 1);
-                } else {
-                    connectionsByPortNumber.put(portNumber, count + 1);
-                }
+            // else it is already created (or being created)
+            if (memoryDatabase.acquire()) {
+                memoryDatabase.awaitCreated();
+                return memoryDatabase;
+            }
 
+            // database is being dropped, wait and create a new one
+            memoryDatabase.awaitDropped();
+            memoryDatabases.remove(name, memoryDatabase);
+        }
+    }
+
+    /**
+     * Removes a reference on the given in-memory database, it is dropped with its last reference.
+     */
+    private void releaseMemoryDatabase(MemoryDatabaseEntry memoryDatabase) {
+        if (memoryDatabase.release() && memoryDatabase.retire()) {
+            try {
+                memoryDatabase.drop();
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Unable to drop the in-memory database " + memoryDatabase.getName(), e);
             } finally {
-                lock.unlock();
+                memoryDatabases.remove(memoryDatabase.getName(), memoryDatabase);
+                memoryDatabase.dropCompleted();
+            }
+        }
+    }
+
+    /**
+     * Gets the read-only replicas of the given database. The first caller takes the first snapshot and schedules the refresh.
+     * @param connectionURL the URL of the connection
+     * @param info the connection properties
+     * @param entry the entry of the server
+     * @param database the entry of the database
+     * @param databasePath the name of the database on the server
+     * @param size the number of replicas
+     * @return the replicas of the database
+     * @throws SQLException if the first snapshot can't be done
+     */
+    private ReplicaSet getReplicas(ConnectionURL connectionURL, Properties info, final ServerEntry entry, DatabaseEntry database, final String databasePath,
+            int size) throws SQLException {
+        ReplicaSet replicaSet = database.getReplicas();
+        if (replicaSet != null) {
+            return replicaSet;
+        }
+        final int portNumber = connectionURL.getPortNumber();
+        long maxStaleness = connectionURL.getLongSetting(DriverSettings.REPLICA_MAX_STALENESS, info, 10000L);
+        File replicasDir = new File(new File(rootDir, "replicas-" + portNumber), connectionURL.getDatabaseName());
+        final ReplicaSet newReplicaSet = new ReplicaSet(replicasDir, connectionURL.getDatabaseName(), size, TimeUnit.MILLISECONDS.toNanos(maxStaleness));
+        try {
+            newReplicaSet.refresh(entry.getServer(), databasePath);
+        } catch (IOException e) {
+            newReplicaSet.close();
+            throw new SQLException("Unable to create the replicas of the database '" + connectionURL.getDatabaseName() + "' on port " + portNumber, e);
+        } catch (SQLException | RuntimeException e) {
+            newReplicaSet.close();
+            throw e;
+        }
+        replicaSet = database.setReplicas(newReplicaSet);
+        if (replicaSet != newReplicaSet) {
+            // created by another connection
+            newReplicaSet.close();
+            return replicaSet;
+        }
+        // a snapshot is never older than the bound when the refresh keeps up
+        long period = Math.max(1, maxStaleness / 2);
+        newReplicaSet.setRefresh(replicaRefresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (newReplicaSet.isClosed() || !entry.acquire()) {
+                    return;
+                }
+                try {
+                    newReplicaSet.refresh(entry.getServer(), databasePath);
+                } catch (SQLException | IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Unable to refresh the replicas of the database ''" + databasePath + "'' on port " + portNumber, e);
+                } finally {
+                    releaseServer(portNumber, entry);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS));
+        return newReplicaSet;
+    }
+
+    /**
+     * Checks periodically that the server of the given entry accepts connections (nothing is done if it is already checked).
+     * @param portNumber the port of the server
+     * @param entry the entry of the server
+     * @param interval the period of the checks in milliseconds
+     */
+    private void startHealthProbe(final int portNumber, final ServerEntry entry, long interval) {
+        if (entry.hasHealthProbe()) {
+            return;
+        }
+        // checked before the end of the interval used by the connections
+        long period = Math.max(1, interval / 2);
+        Future<?> healthProbe = reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                boolean healthy = entry.getServer().isRunning();
+                if (!healthy) {
+                    LOGGER.log(Level.WARNING, "H2 server on port {0} doesn''t accept connections", String.valueOf(portNumber));
+                }
+                entry.healthChecked(healthy);
             }
+        }, period, period, TimeUnit.MILLISECONDS);
+        if (!entry.setHealthProbe(healthProbe)) {
+            healthProbe.cancel(false);
         }
+    }
 
-        // return a wrapped connection
-        Connection connection = new JdbcConnection(h2Url, info);
-        Connection wrappedConnection = (Connection) Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(), new Class[] {Connection.class}, new H2ConnectionInvocationHandler(this, portNumber, connection));
-        return wrappedConnection;
+    /**
+     * Gets the physical servers shared by the ports. The size given by the first caller is used.
+     * @param size the number of physical servers
+     * @return the shared servers
+     */
+    private synchronized SharedTcpServers getSharedServers(int size) {
+        if (sharedServers == null) {
+            sharedServers = new SharedTcpServers(rootDir, size);
+        }
+        return sharedServers;
+    }
+
+    /**
+     * Starts the server of a new entry (by the thread that created the entry).
+     */
+    private void startServer(int portNumber, String databaseName, Properties info, ServerEntry entry) throws SQLException {
+        H2Server h2server = entry.getServer();
+        long startTime = System.nanoTime();
+        try {
+            // do we have a user ?
+            String user = info.getProperty("user");
+            if (user != null) {
+                String password = info.getProperty("password");
+                h2server.addUser(user, password, databaseName);
+
+            }
+            h2server.start();
+        } catch (H2ServerException | SQLException | RuntimeException e) {
+            // users may have failed after the start
+            h2server.stop();
+            servers.remove(portNumber, entry);
+            entry.startFailed(e);
+            throw new SQLException("Unable to start the associated H2 server", e);
+        }
+        entry.getMetrics().serverStarted(startTime);
+        entry.startSucceeded();
+    }
+
+    /**
+     * Adds the user of the connection on its database if the server is already started (nothing is done if the user has already been added).
+     */
+    private void provisionUser(ServerEntry entry, String databaseName, Properties info) throws SQLException {
+        String user = info.getProperty("user");
+        if (user != null) {
+            entry.getServer().addUser(user, info.getProperty("password"), databaseName);
+        }
+    }
+
+    /**
+     * Notify the driver that a connection has been closed.
+     * The database is closed when its last connection is closed and the server is stopped when all its databases are closed
+     * or, if an idle timeout is set, when no connections have been done during this timeout.
+     * @param connection the closed connection
+     */
+    public void closing(H2Connection connection) {
+        H2ConnectionReference reference = connection.getReference();
+        // not managed or already reclaimed
+        if (reference == null || !reference.closed()) {
+            return;
+        }
+        release(reference);
+    }
+
+    /**
+     * Releases the references of a connection closed or reclaimed on its database and its server.
+     */
+    private void release(H2ConnectionReference connection) {
+        // the first waiting connect is admitted
+        connection.releaseAdmission();
+        MemoryDatabaseEntry memoryDatabase = connection.getMemoryDatabase();
+        if (memoryDatabase != null) {
+            memoryDatabase.closed(connection);
+            releaseMemoryDatabase(memoryDatabase);
+            return;
+        }
+        int portNumber = connection.getPortNumber();
+        String databaseName = connection.getDatabaseName();
+        ServerEntry entry = servers.get(portNumber);
+        // not managed
+        if (entry == null) {
+            return;
+        }
+        entry.closed(connection);
+        entry.getMetrics().closed();
+        if (databaseName != null) {
+            releaseDatabase(portNumber, entry, entry.getDatabase(databaseName));
+        }
+        releaseServer(portNumber, entry);
+    }
+
+    /**
+     * Reclaims the connections garbage collected without being closed and closes by force the connections held too long.
+     */
+    private void checkLeaks() {
+        Reference<? extends H2Connection> enqueued;
+        while ((enqueued = leakQueue.poll()) != null) {
+            H2ConnectionReference reference = (H2ConnectionReference) enqueued;
+            if (reference.closed()) {
+                LOGGER.log(Level.WARNING, "Leaked " + reference + ": garbage collected without being closed after "
+                        + TimeUnit.NANOSECONDS.toMillis(reference.getHoldTime()) + " ms, the connection has been reclaimed", reference.getOpenStack());
+                reclaim(reference);
+            }
+        }
+        if (!holdTimeChecks) {
+            return;
+        }
+        List<H2ConnectionReference> connections = new ArrayList<>();
+        for (ServerEntry entry : servers.values()) {
+            connections.addAll(entry.getConnections());
+        }
+        for (MemoryDatabaseEntry memoryDatabase : memoryDatabases.values()) {
+            connections.addAll(memoryDatabase.getConnections());
+        }
+        for (H2ConnectionReference reference : connections) {
+            if (reference.isHeldTooLong() && !reference.isClosed()) {
+                LOGGER.log(Level.WARNING, "The " + reference + " is opened since " + TimeUnit.NANOSECONDS.toMillis(reference.getHoldTime())
+                        + " ms, the connection is closed by force", reference.getOpenStack());
+                try {
+                    forceClose(reference);
+                } catch (SQLException e) {
+                    LOGGER.log(Level.FINE, "Unable to close the " + reference, e);
+                }
+            }
+        }
+    }
 
+    /**
+     * Closes by force the connection of the given reference, the resources are reclaimed if the connection has been garbage collected.
+     */
+    private void forceClose(H2ConnectionReference reference) throws SQLException {
+        H2Connection connection = reference.get();
+        if (connection != null) {
+            connection.forceClose();
+        } else if (reference.closed()) {
+            reclaim(reference);
+        }
     }
 
-    public void closing(int portNumber) {
-        lock.lock();
+    /**
+     * Closes the physical connection of a connection which is no longer reachable and releases its references.
+     */
+    private void reclaim(H2ConnectionReference reference) {
         try {
-            Integer val = connectionsByPortNumber.get(portNumber);
-            // not managed
-            if (val == null) {
-                return;
+            reference.discard();
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Unable to close the physical " + reference, e);
+        } finally {
+            release(reference);
+        }
+    }
+
+    /**
+     * Removes a connection on the given database.
+     */
+    private void releaseDatabase(final int portNumber, final ServerEntry entry, final DatabaseEntry database) {
+        if (database.release()) {
+            long compactIdleTime = database.getCompactIdleTime();
+            if (compactIdleTime > 0 && entry.acquire()) {
+                // the server is kept started until the compaction
+                scheduleCompaction(portNumber, entry, database, compactIdleTime);
             }
+            long idleTimeout = entry.getIdleTimeout();
+            if (idleTimeout > 0) {
+                database.setPendingClose(reaper.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        closeDatabase(portNumber, entry, database);
+                    }
+                }, idleTimeout, TimeUnit.MILLISECONDS));
+            } else {
+                closeDatabase(portNumber, entry, database);
+            }
+        }
+    }
 
-            // decrement
-            val = val - 1;
-            connectionsByPortNumber.put(portNumber, val);
+    /**
+     * Releases the resources of the given database if it is still idle. H2 closes the database with its last session.
+     */
+    private void closeDatabase(int portNumber, ServerEntry entry, DatabaseEntry database) {
+        // used again or server already stopped ?
+        if (!database.isIdle() || servers.get(portNumber) != entry) {
+            return;
+        }
+        // snapshots of an unused database are not refreshed
+        database.closeReplicas();
+        // idle pooled connections should not keep the database opened
+        pool.evict(portNumber, database.getDatabaseName());
+    }
 
-            // zero ? needs to stop the database
-            if (val == 0) {
-                H2Server server = servers.get(portNumber);
-                server.stop();
-                servers.remove(portNumber);
-                connectionsByPortNumber.remove(portNumber);
+    /**
+     * Schedules the compaction of an idle database. The given reference on the server is released after the compaction.
+     */
+    private void scheduleCompaction(final int portNumber, final ServerEntry entry, final DatabaseEntry database, long delay) {
+        // idle again, the previous compaction is delayed
+        if (database.cancelCompaction()) {
+            releaseServer(portNumber, entry);
+        }
+        final Runnable compaction = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compactDatabase(portNumber, entry, database);
+                } finally {
+                    releaseServer(portNumber, entry);
+                }
+            }
+        };
+        database.setPendingCompaction(reaper.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compactor.execute(compaction);
+                } catch (RejectedExecutionException e) {
+                    releaseServer(portNumber, entry);
+                }
             }
+        }, delay, TimeUnit.MILLISECONDS));
+    }
 
+    /**
+     * Compacts the given database if it is still idle and has been written since its last compaction.
+     * Connections opened on the database meanwhile wait for the end of the compaction.
+     */
+    private void compactDatabase(int portNumber, ServerEntry entry, DatabaseEntry database) {
+        // used again or driver invalidated ?
+        if (!database.isIdle() || invalidating || servers.get(portNumber) != entry) {
+            return;
+        }
+        String databaseName = database.getDatabaseName();
+        try {
+            File databaseFile = new File(H2Server.getDatabaseDir(rootDir, portNumber), databaseName.concat(".h2.db"));
+            if (!database.needsCompaction(databaseFile) || !database.beginCompaction()) {
+                return;
+            }
+            // H2 closes the sessions of the database, including the idle pooled connections
+            database.closeReplicas();
+            pool.evict(portNumber, databaseName);
+            long startTime = System.nanoTime();
+            long length = databaseFile.length();
+            boolean compacted = false;
+            try {
+                FileStore fileStore = database.getFileStore();
+                if (fileStore == null) {
+                    fileStore = FileStore.DEFAULT;
+                }
+                entry.getServer().compact(fileStore.getDatabasePath(databaseName));
+                compacted = true;
+            } finally {
+                // a failed compaction is not recorded, so it is tried again at the next idle time
+                if (compacted) {
+                    database.compactionDone(databaseFile);
+                } else {
+                    database.compactionFailed();
+                }
+            }
+            long reclaimed = length - databaseFile.length();
+            entry.getMetrics().compacted(startTime, reclaimed);
+            LOGGER.log(Level.INFO, "Database ''{0}'' on port {1} compacted in {2} ms, {3} bytes reclaimed", new Object[] {databaseName, String.valueOf(portNumber),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), reclaimed});
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unable to compact the database '" + databaseName + "' on port " + portNumber, e);
+        }
+    }
+
+    /**
+     * Removes a reference on the server of the given entry.
+     */
+    private void releaseServer(final int portNumber, final ServerEntry entry) {
+        // zero ? needs to stop the database
+        if (entry.release()) {
+            long idleTimeout = entry.getIdleTimeout();
+            if (idleTimeout > 0) {
+                entry.setPendingStop(reaper.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        stopServer(portNumber, entry);
+                    }
+                }, idleTimeout, TimeUnit.MILLISECONDS));
+            } else {
+                stopServer(portNumber, entry);
+            }
+        }
+    }
+
+    /**
+     * Stops the server of the given entry if it is still idle.
+     */
+    private void stopServer(int portNumber, ServerEntry entry) {
+        // used again ?
+        if (!entry.retire()) {
+            return;
+        }
+        long stopTime = System.nanoTime();
+        entry.cancelHealthProbe();
+        for (DatabaseEntry database : entry.getDatabases()) {
+            database.closeReplicas();
+        }
+        try {
+            // idle pooled connections should not keep the server alive
+            pool.evict(portNumber);
+            entry.getServer().stop();
         } finally {
-            lock.unlock();
+            entry.getMetrics().serverStopped(stopTime);
+            servers.remove(portNumber, entry);
+            entry.stopCompleted();
         }
     }
 
     @Override
     public boolean acceptsURL(String url) throws SQLException {
         if (url != null) {
-            if (url.startsWith(PGH2_START_URL)) {
+            if (url.startsWith(ConnectionURL.PGH2_START_URL)) {
                 return true;
             }
         }
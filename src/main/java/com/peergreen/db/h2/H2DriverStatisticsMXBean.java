@@ -0,0 +1,65 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import java.util.List;
+
+/**
+ * Statistics of the Peergreen H2 driver.
+ * It is registered as an MBean (com.peergreen.db.h2:type=Driver) and as an OSGi service.
+ * @author Florent Benoit
+ */
+public interface H2DriverStatisticsMXBean {
+
+    /**
+     * Name of the MBean.
+     */
+    String OBJECT_NAME = "com.peergreen.db.h2:type=Driver";
+
+    /**
+     * @return the statistics of all the ports used by the driver
+     */
+    List<PortStatistics> getPortStatistics();
+
+    /**
+     * @param portNumber the port number
+     * @return the statistics of the given port or null if the port has never been used
+     */
+    PortStatistics getPortStatistics(int portNumber);
+
+    /**
+     * Statistics by SQL are only collected for the connections with the QUERY_STATISTICS setting.
+     * @return the statistics of the most recently executed SQL statements
+     */
+    List<QueryStatistics> getQueryStatistics();
+
+    /**
+     * Clear the statistics by SQL.
+     */
+    void resetQueryStatistics();
+
+    /**
+     * @return the number of connections currently opened on all the ports
+     */
+    int getOpenConnections();
+
+    /**
+     * @return the number of servers currently started
+     */
+    int getStartedServers();
+
+    /**
+     * @return true once the databases to warm up have been opened (always true without warm-up configuration)
+     */
+    boolean isReady();
+
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the statistics of a port handled by the driver.
+ * @author Florent Benoit
+ */
+public class PortStatistics {
+
+    private final int portNumber;
+    private final boolean serverUp;
+    private final int openConnections;
+    private final int peakConnections;
+    private final long connects;
+    private final long[] connectLatencyHistogram;
+    private final long serverStarts;
+    private final long serverStartTime;
+    private final long serverStops;
+    private final long serverStopTime;
+    private final long waits;
+    private final long waitTime;
+    private final long compactions;
+    private final long compactionTime;
+    private final long reclaimedBytes;
+    private final int queuedConnects;
+    private final int peakQueuedConnects;
+    private final long admissionWaits;
+    private final long admissionWaitTime;
+    private final long admissionRejections;
+
+    @ConstructorProperties({"portNumber", "serverUp", "openConnections", "peakConnections", "connects", "connectLatencyHistogram", "serverStarts", "serverStartTime", "serverStops", "serverStopTime", "waits", "waitTime", "compactions", "compactionTime", "reclaimedBytes",
+        "queuedConnects", "peakQueuedConnects", "admissionWaits", "admissionWaitTime", "admissionRejections"})
+    public PortStatistics(int portNumber, boolean serverUp, int openConnections, int peakConnections, long connects, long[] connectLatencyHistogram, long serverStarts, long serverStartTime, long serverStops, long serverStopTime, long waits, long waitTime, long compactions, long compactionTime, long reclaimedBytes, int queuedConnects, int peakQueuedConnects, long admissionWaits, long admissionWaitTime, long admissionRejections) {
+        this.portNumber = portNumber;
+        this.serverUp = serverUp;
+        this.openConnections = openConnections;
+        this.peakConnections = peakConnections;
+        this.connects = connects;
+        this.connectLatencyHistogram = connectLatencyHistogram;
+        this.serverStarts = serverStarts;
+        this.serverStartTime = serverStartTime;
+        this.serverStops = serverStops;
+        this.serverStopTime = serverStopTime;
+        this.waits = waits;
+        this.waitTime = waitTime;
+        this.compactions = compactions;
+        this.compactionTime = compactionTime;
+        this.reclaimedBytes = reclaimedBytes;
+        this.queuedConnects = queuedConnects;
+        this.peakQueuedConnects = peakQueuedConnects;
+        this.admissionWaits = admissionWaits;
+        this.admissionWaitTime = admissionWaitTime;
+        this.admissionRejections = admissionRejections;
+    }
+
+    /**
+     * @return the port number
+     */
+    public int getPortNumber() {
+        return portNumber;
+    }
+
+    /**
+     * @return true if the H2 server of this port is started
+     */
+    public boolean isServerUp() {
+        return serverUp;
+    }
+
+    /**
+     * @return the number of connections currently opened on this port
+     */
+    public int getOpenConnections() {
+        return openConnections;
+    }
+
+    /**
+     * @return the maximum number of connections opened at the same time on this port
+     */
+    public int getPeakConnections() {
+        return peakConnections;
+    }
+
+    /**
+     * @return the number of connections done on this port
+     */
+    public long getConnects() {
+        return connects;
+    }
+
+    /**
+     * Latency of the connect calls: the element i is the number of connects that took less than 2^i microseconds (and at least 2^(i-1)).
+     * The last element counts all the slower connects.
+     * @return the histogram of the connect latencies
+     */
+    public long[] getConnectLatencyHistogram() {
+        return connectLatencyHistogram;
+    }
+
+    /**
+     * @return the number of times the H2 server has been started
+     */
+    public long getServerStarts() {
+        return serverStarts;
+    }
+
+    /**
+     * @return the total time in milliseconds spent to start the H2 server
+     */
+    public long getServerStartTime() {
+        return serverStartTime;
+    }
+
+    /**
+     * @return the number of times the H2 server has been stopped
+     */
+    public long getServerStops() {
+        return serverStops;
+    }
+
+    /**
+     * @return the total time in milliseconds spent to stop the H2 server
+     */
+    public long getServerStopTime() {
+        return serverStopTime;
+    }
+
+    /**
+     * @return the number of connects that had to wait for the start or the stop of the H2 server
+     */
+    public long getWaits() {
+        return waits;
+    }
+
+    /**
+     * @return the total time in microseconds spent by connects waiting for the start or the stop of the H2 server
+     */
+    public long getWaitTime() {
+        return waitTime;
+    }
+
+    /**
+     * @return the number of compactions of the idle databases of this port
+     */
+    public long getCompactions() {
+        return compactions;
+    }
+
+    /**
+     * @return the total time in milliseconds spent to compact the idle databases of this port
+     */
+    public long getCompactionTime() {
+        return compactionTime;
+    }
+
+    /**
+     * @return the total number of bytes reclaimed by the compactions of the databases of this port
+     */
+    public long getReclaimedBytes() {
+        return reclaimedBytes;
+    }
+
+    /**
+     * @return the number of connects currently waiting for the limit of connections of this port or of its databases
+     */
+    public int getQueuedConnects() {
+        return queuedConnects;
+    }
+
+    /**
+     * @return the maximum number of connects waiting at the same time for the limit of connections
+     */
+    public int getPeakQueuedConnects() {
+        return peakQueuedConnects;
+    }
+
+    /**
+     * @return the number of connects that had to wait for the limit of connections
+     */
+    public long getAdmissionWaits() {
+        return admissionWaits;
+    }
+
+    /**
+     * @return the total time in microseconds spent by connects waiting for the limit of connections
+     */
+    public long getAdmissionWaitTime() {
+        return admissionWaitTime;
+    }
+
+    /**
+     * @return the number of connects that failed because too many connects were waiting or because the wait timed out
+     */
+    public long getAdmissionRejections() {
+        return admissionRejections;
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the aggregated statistics of a SQL statement executed on a database handled by the driver.
+ * @author Florent Benoit
+ */
+public class QueryStatistics {
+
+    private final int portNumber;
+    private final String databaseName;
+    private final String sql;
+    private final long executions;
+    private final long totalTime;
+    private final long rows;
+    private final long p50;
+    private final long p99;
+
+    @ConstructorProperties({"portNumber", "databaseName", "sql", "executions", "totalTime", "rows", "p50", "p99"})
+    public QueryStatistics(int portNumber, String databaseName, String sql, long executions, long totalTime, long rows, long p50, long p99) {
+        this.portNumber = portNumber;
+        this.databaseName = databaseName;
+        this.sql = sql;
+        this.executions = executions;
+        this.totalTime = totalTime;
+        this.rows = rows;
+        this.p50 = p50;
+        this.p99 = p99;
+    }
+
+    /**
+     * @return the port number of the database
+     */
+    public int getPortNumber() {
+        return portNumber;
+    }
+
+    /**
+     * @return the name of the database
+     */
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    /**
+     * @return the SQL text
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the number of executions
+     */
+    public long getExecutions() {
+        return executions;
+    }
+
+    /**
+     * @return the total time in microseconds of the executions (including the iteration of the result sets)
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * @return the total number of rows read or updated
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the median time in microseconds (upper bound of a power of two bucket)
+     */
+    public long getP50() {
+        return p50;
+    }
+
+    /**
+     * @return the 99th percentile time in microseconds (upper bound of a power of two bucket)
+     */
+    public long getP99() {
+        return p99;
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limit of the connections opened at the same time on a port or on a database.
+ * Connects above the limit wait in FIFO order (fair semaphore) until a connection is closed,
+ * they fail immediately if too many connects are already waiting.
+ * @author Florent Benoit
+ */
+public class AdmissionControl {
+
+    /**
+     * Port or database of the limit (used in the messages).
+     */
+    private final String name;
+
+    private final int maxConnections;
+
+    /**
+     * Maximum number of waiting connects.
+     */
+    private final int maxQueueSize;
+
+    private final Semaphore permits;
+
+    private final AtomicInteger queueSize = new AtomicInteger();
+
+    private final PortMetrics metrics;
+
+    /**
+     * Build the limit of a port or of a database.
+     * @param name the port or the database of the limit
+     * @param maxConnections the maximum number of connections opened at the same time
+     * @param maxQueueSize the maximum number of waiting connects
+     * @param metrics the metrics of the port receiving the waits
+     */
+    public AdmissionControl(String name, int maxConnections, int maxQueueSize, PortMetrics metrics) {
+        this.name = name;
+        this.maxConnections = maxConnections;
+        this.maxQueueSize = maxQueueSize;
+        this.permits = new Semaphore(maxConnections, true);
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the maximum number of connections opened at the same time
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return the number of waiting connects
+     */
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    /**
+     * Admits a connection, waiting behind the connects already waiting if the limit is reached.
+     * @param deadline the value of System.nanoTime() after which the connect fails
+     * @throws SQLException if too many connects are waiting, if the deadline is reached or if the thread is interrupted
+     */
+    public void acquire(long deadline) throws SQLException {
+        // fair semaphore, tryAcquire() would pass before the waiting connects
+        try {
+            if (permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection on " + name, e);
+        }
+        int waiting = queueSize.incrementAndGet();
+        long startTime = System.nanoTime();
+        try {
+            if (waiting > maxQueueSize) {
+                metrics.admissionRejected();
+                throw new SQLException("Too many connections on " + name + ": " + maxConnections + " connections are opened and " + maxQueueSize
+                        + " connects are already waiting");
+            }
+            metrics.queued();
+            try {
+                if (!permits.tryAcquire(deadline - startTime, TimeUnit.NANOSECONDS)) {
+                    metrics.admissionRejected();
+                    throw new SQLException("No connection available on " + name + " after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+                            + " ms (" + maxConnections + " connections are opened)");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection on " + name, e);
+            } finally {
+                metrics.dequeued(startTime);
+            }
+        } finally {
+            queueSize.decrementAndGet();
+        }
+    }
+
+    /**
+     * Releases the place of a closed connection, the first waiting connect is admitted.
+     */
+    public void release() {
+        permits.release();
+    }
+
+}
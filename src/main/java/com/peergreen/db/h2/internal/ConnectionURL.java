@@ -0,0 +1,232 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Parsed pg+h2 URL.
+ * Here is an example of URL: jdbc:pg+h2:tcp://localhost:1234/mydatabase;POOL_MAX_SIZE=10
+ * which is rewritten into the H2 URL jdbc:h2:tcp://localhost:1234/mydatabase
+ * @author Florent Benoit
+ */
+public class ConnectionURL {
+
+    public static final String PGH2_START_URL = "jdbc:pg+h2:";
+
+    public static final String PGH2_START_TCP_URL_LOCALHOST = PGH2_START_URL.concat("tcp://localhost:");
+
+    public static final String PGH2_START_MEM_URL = PGH2_START_URL.concat("mem:");
+
+    private static final String H2_START_URL = "jdbc:h2:";
+
+    /**
+     * H2 URL (without the settings handled by the driver).
+     */
+    private final String h2Url;
+
+    /**
+     * H2 settings of the URL (starting with ';') or an empty string.
+     */
+    private final String h2Settings;
+
+    /**
+     * Port number of a local TCP URL, else -1.
+     */
+    private final int portNumber;
+
+    /**
+     * Name of the database of a local TCP URL, else null.
+     */
+    private final String databaseName;
+
+    /**
+     * Name of the in-memory database of a mem URL, else null.
+     */
+    private final String memoryDatabaseName;
+
+    /**
+     * Settings of the driver found in the URL.
+     */
+    private final Map<String, String> settings;
+
+    /**
+     * Parse the given pg+h2 URL.
+     * @param url the URL to parse
+     */
+    public ConnectionURL(String url) {
+        this.settings = new HashMap<>();
+
+        // needs to map pg+h2 url to a h2 url and extract our own settings
+        String name = url.substring(PGH2_START_URL.length());
+        StringBuilder sb = new StringBuilder(H2_START_URL);
+        String[] parts = name.split(";");
+        sb.append(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            String part = parts[i];
+            int equal = part.indexOf('=');
+            if (equal > 0) {
+                String key = part.substring(0, equal).trim().toUpperCase(Locale.ENGLISH);
+                if (DriverSettings.isDriverSetting(key)) {
+                    settings.put(key, part.substring(equal + 1));
+                    continue;
+                }
+            }
+            sb.append(';').append(part);
+        }
+        this.h2Url = sb.toString();
+        this.h2Settings = h2Url.substring(H2_START_URL.length() + parts[0].length());
+
+        String database = null;
+        int port = -1;
+        if (url.startsWith(PGH2_START_TCP_URL_LOCALHOST)) {
+            String rightPart = parts[0].substring("tcp://localhost:".length());
+            int slash = rightPart.indexOf("/");
+            port = Integer.parseInt(rightPart.substring(0, slash));
+            database = rightPart.substring(slash + 1);
+        }
+        this.portNumber = port;
+        this.databaseName = database;
+
+        if (url.startsWith(PGH2_START_MEM_URL)) {
+            this.memoryDatabaseName = parts[0].substring("mem:".length());
+        } else {
+            this.memoryDatabaseName = null;
+        }
+    }
+
+    /**
+     * @return the URL to give to H2
+     */
+    public String getH2Url() {
+        return h2Url;
+    }
+
+    /**
+     * @return the H2 settings of the URL (starting with ';') or an empty string
+     */
+    public String getH2Settings() {
+        return h2Settings;
+    }
+
+    /**
+     * @return the port number of the local H2 server or -1 if the URL is not managed by the driver
+     */
+    public int getPortNumber() {
+        return portNumber;
+    }
+
+    /**
+     * @return the name of the database on the local H2 server, else null
+     */
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    /**
+     * @return the name of the in-memory database of a mem URL, else null
+     */
+    public String getMemoryDatabaseName() {
+        return memoryDatabaseName;
+    }
+
+    /**
+     * @return true if the in-memory database of this URL is handled by the driver
+     */
+    public boolean isMemory() {
+        return memoryDatabaseName != null;
+    }
+
+    /**
+     * @return true if the H2 server of this URL is handled by the driver
+     */
+    public boolean isManaged() {
+        return portNumber != -1;
+    }
+
+    /**
+     * Gets the value of a driver setting. URL value has precedence over the connection properties which have precedence over the system properties.
+     * @param key the key of the setting
+     * @param info the connection properties
+     * @return the value or null if not set
+     */
+    public String getSetting(String key, Properties info) {
+        String value = settings.get(key);
+        if (value == null && info != null) {
+            value = info.getProperty(key);
+        }
+        if (value == null) {
+            value = System.getProperty(DriverSettings.SYSTEM_PROPERTY_PREFIX.concat(key));
+        }
+        return value;
+    }
+
+    /**
+     * Gets the boolean value of a driver setting.
+     * @param key the key of the setting
+     * @param info the connection properties
+     * @param defaultValue the value to use if the setting is not set
+     * @return the value
+     */
+    public boolean getBooleanSetting(String key, Properties info, boolean defaultValue) {
+        String value = getSetting(key, info);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Gets the long value of a driver setting.
+     * @param key the key of the setting
+     * @param info the connection properties
+     * @param defaultValue the value to use if the setting is not set
+     * @return the value
+     * @throws SQLException if the value is not a valid long
+     */
+    public long getLongSetting(String key, Properties info, long defaultValue) throws SQLException {
+        String value = getSetting(key, info);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new SQLException("Invalid value '" + value + "' for the setting " + key, e);
+        }
+    }
+
+    /**
+     * Gets the integer value of a driver setting.
+     * @param key the key of the setting
+     * @param info the connection properties
+     * @param defaultValue the value to use if the setting is not set
+     * @return the value
+     * @throws SQLException if the value is not a valid integer
+     */
+    public int getIntSetting(String key, Properties info, int defaultValue) throws SQLException {
+        String value = getSetting(key, info);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new SQLException("Invalid value '" + value + "' for the setting " + key, e);
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Online backup and restore of the databases of the H2 servers.
+ * The backup is a compressed and consistent copy done by H2 (BACKUP TO) while the database keeps serving.
+ * With a bandwidth limit, H2 writes the backup through a throttled file system so the reads and the compression of the database
+ * are paced too, the backup file is then streamed at the same rate. The restore extracts a backup in the directory of a port
+ * before its server is started.
+ * @author Florent Benoit
+ */
+public final class DatabaseBackup {
+
+    /**
+     * Size of the buffer used to stream the backups.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Files of a database removed before a restore.
+     */
+    private static final String[] DATABASE_SUFFIXES = {".h2.db", ".mv.db", ".lock.db", ".trace.db"};
+
+    /**
+     * Utility class.
+     */
+    private DatabaseBackup() {
+
+    }
+
+    /**
+     * Writes a backup of a database of the given server.
+     * @param server the started server of the database
+     * @param database the name of the database on the server (may be prefixed by a H2 file system)
+     * @param out the stream receiving the backup (zip format, not closed by this method)
+     * @param maxBytesPerSecond the maximum number of bytes written per second to the stream (0 if not limited)
+     * @throws SQLException if the backup can't be done
+     * @throws IOException if the backup can't be written
+     */
+    public static void backup(H2Server server, String database, OutputStream out, long maxBytesPerSecond) throws SQLException, IOException {
+        // in the base directory of the databases, not in the temporary directory of the system
+        File zip = File.createTempFile("h2-backup", ".zip", server.getDatabaseDir().getParentFile());
+        try {
+            // same JVM as the server, the file is written by H2
+            String path = zip.getAbsolutePath();
+            if (maxBytesPerSecond > 0) {
+                path = ThrottledFilePath.getPath(zip, maxBytesPerSecond);
+            }
+            try (Connection connection = DriverManager.getConnection(server.getUrl(database), "", ""); Statement statement = connection.createStatement()) {
+                statement.execute("BACKUP TO ".concat(H2Server.quoteLiteral(path)));
+            }
+            try (InputStream in = Files.newInputStream(zip.toPath())) {
+                copy(in, out, maxBytesPerSecond);
+            }
+        } finally {
+            if (!zip.delete()) {
+                zip.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Restores a backup of a database in the directory of a port. The existing files of the database are replaced
+     * only if the backup contains the database.
+     * @param in the backup (zip format as written by backup, not closed by this method)
+     * @param databaseDir the directory of the databases of the port
+     * @param databaseName the name of the database
+     * @return the number of restored files
+     * @throws IOException if the backup can't be read or the files can't be written
+     */
+    public static int restore(InputStream in, File databaseDir, String databaseName) throws IOException {
+        File database = new File(databaseDir, databaseName);
+        String prefix = database.getName();
+        File parent = database.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create the directory " + parent);
+        }
+
+        // extracted files by final name
+        Map<File, File> extracted = new LinkedHashMap<>();
+        try {
+            ZipInputStream zipInputStream = new ZipInputStream(in);
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                // entries are relative to the base directory of the server
+                String entryName = new File(zipEntry.getName().replace('\\', '/')).getName();
+                if (zipEntry.isDirectory() || !entryName.startsWith(prefix.concat("."))) {
+                    continue;
+                }
+                File temporary = File.createTempFile(prefix, ".tmp", parent);
+                extracted.put(new File(parent, entryName), temporary);
+                try (OutputStream out = Files.newOutputStream(temporary.toPath())) {
+                    copy(zipInputStream, out, 0);
+                }
+            }
+            if (extracted.isEmpty()) {
+                return 0;
+            }
+
+            // replace the database
+            for (String suffix : DATABASE_SUFFIXES) {
+                Files.deleteIfExists(new File(database.getPath().concat(suffix)).toPath());
+            }
+            for (Map.Entry<File, File> entry : extracted.entrySet()) {
+                Files.move(entry.getValue().toPath(), entry.getKey().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return extracted.size();
+        } finally {
+            for (File temporary : extracted.values()) {
+                Files.deleteIfExists(temporary.toPath());
+            }
+        }
+    }
+
+    /**
+     * Copies a stream, sleeping when the copy goes faster than the given rate.
+     */
+    private static void copy(InputStream in, OutputStream out, long maxBytesPerSecond) throws IOException {
+        // not closed, the stream of the caller stays opened
+        OutputStream throttled = new ThrottledOutputStream(out, maxBytesPerSecond);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            throttled.write(buffer, 0, read);
+        }
+        throttled.flush();
+    }
+
+}
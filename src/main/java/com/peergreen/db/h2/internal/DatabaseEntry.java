@@ -0,0 +1,365 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State of a database of a port handled by the driver: the number of connections opened on this database.
+ * When the last connection is closed, the resources of the database (idle pooled connections) are released,
+ * either immediately or after the idle timeout of the server, without waiting for the other databases of the port.
+ * An idle database may then be compacted or copied as a template: connections opened meanwhile wait for the end of the compaction or of the copy.
+ * @author Florent Benoit
+ */
+public class DatabaseEntry {
+
+    private final String databaseName;
+
+    /**
+     * Number of connections opened on the database.
+     */
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /**
+     * File system used by the opened connections.
+     */
+    private volatile FileStore fileStore;
+
+    /**
+     * Rows of a result kept in memory, applied to the database by the driver (0 if not applied).
+     */
+    private int resultMemoryRows;
+
+    /**
+     * Close scheduled while the database is idle.
+     */
+    private volatile Future<?> pendingClose;
+
+    /**
+     * Idle time in milliseconds before the compaction of the database (0 if the database is not compacted).
+     */
+    private volatile long compactIdleTime;
+
+    /**
+     * Size in bytes below which the database is not compacted.
+     */
+    private volatile long compactMinSize;
+
+    /**
+     * Compaction scheduled while the database is idle (it holds a reference on the server).
+     */
+    private volatile Future<?> pendingCompaction;
+
+    /**
+     * Number of connections being opened (the database can't be compacted meanwhile).
+     */
+    private int opening;
+
+    /**
+     * Released at the end of the running compaction or copy (null if the database is not compacted nor copied).
+     */
+    private CountDownLatch compaction;
+
+    /**
+     * Length and last modification of the database file after the last compaction (-1 if not compacted).
+     */
+    private long compactedLength = -1;
+    private long compactedTime;
+
+    /**
+     * Limit of the connections of the database (null if the connections are not limited).
+     */
+    private AdmissionControl admission;
+
+    /**
+     * Read-only replicas of the database (null if the connections don't use the READ_REPLICAS setting).
+     */
+    private ReplicaSet replicas;
+
+    /**
+     * Build an entry for the given database.
+     * @param databaseName the name of the database
+     */
+    public DatabaseEntry(String databaseName) {
+        this.databaseName = databaseName;
+    }
+
+    /**
+     * @return the name of the database
+     */
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    /**
+     * @return the number of connections opened on the database
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * @return true if no connections are opened on the database
+     */
+    public boolean isIdle() {
+        return connections.get() == 0;
+    }
+
+    /**
+     * Sets the close scheduled while the database is idle.
+     * @param pendingClose the scheduled close
+     */
+    public void setPendingClose(Future<?> pendingClose) {
+        this.pendingClose = pendingClose;
+    }
+
+    /**
+     * Gets the limit of the connections of the database, it is created by the first caller.
+     * @param portNumber the port of the database
+     * @param maxConnections the maximum number of connections opened at the same time
+     * @param maxQueueSize the maximum number of waiting connects
+     * @param metrics the metrics of the port
+     * @return the limit of the connections of the database
+     */
+    public synchronized AdmissionControl getAdmission(int portNumber, int maxConnections, int maxQueueSize, PortMetrics metrics) {
+        if (admission == null) {
+            admission = new AdmissionControl("the database '" + databaseName + "' of port " + portNumber, maxConnections, maxQueueSize, metrics);
+        }
+        return admission;
+    }
+
+    /**
+     * Sets the compaction of the database when it is idle.
+     * @param idleTime the idle time in milliseconds before the compaction (0 if the database is not compacted)
+     * @param minSize the size in bytes below which the database is not compacted
+     */
+    public void setCompactPolicy(long idleTime, long minSize) {
+        this.compactIdleTime = idleTime;
+        this.compactMinSize = minSize;
+    }
+
+    /**
+     * @return the idle time in milliseconds before the compaction (0 if the database is not compacted)
+     */
+    public long getCompactIdleTime() {
+        return compactIdleTime;
+    }
+
+    /**
+     * Sets the compaction scheduled while the database is idle.
+     * @param pendingCompaction the scheduled compaction
+     */
+    public void setPendingCompaction(Future<?> pendingCompaction) {
+        this.pendingCompaction = pendingCompaction;
+    }
+
+    /**
+     * Cancels the scheduled compaction.
+     * @return true if the compaction was cancelled before running, in that case the caller releases its reference on the server
+     */
+    public boolean cancelCompaction() {
+        Future<?> compact = pendingCompaction;
+        return compact != null && compact.cancel(false);
+    }
+
+    /**
+     * @param databaseFile the file of the database
+     * @return true if the file is larger than the minimum size and has been written since the last compaction
+     */
+    public synchronized boolean needsCompaction(File databaseFile) {
+        long length = databaseFile.length();
+        if (length < compactMinSize || length == 0) {
+            return false;
+        }
+        return length != compactedLength || databaseFile.lastModified() != compactedTime;
+    }
+
+    /**
+     * Waits for the end of a running compaction, then registers a connection being opened.
+     * The caller must call openDone once the connection is acquired or has failed.
+     * @throws SQLException if interrupted while waiting
+     */
+    public void beginOpen() throws SQLException {
+        for (;;) {
+            CountDownLatch latch;
+            synchronized (this) {
+                latch = compaction;
+                if (latch == null) {
+                    opening++;
+                    return;
+                }
+            }
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for the compaction of the database '" + databaseName + "'", e);
+            }
+        }
+    }
+
+    /**
+     * The connection registered by beginOpen is opened (or has failed).
+     */
+    public synchronized void openDone() {
+        opening--;
+    }
+
+    /**
+     * Starts a compaction if the database is still idle.
+     * @return true if the compaction can be done, the caller must call compactionDone
+     */
+    public synchronized boolean beginCompaction() {
+        if (compaction != null || opening > 0 || !isIdle()) {
+            return false;
+        }
+        compaction = new CountDownLatch(1);
+        return true;
+    }
+
+    /**
+     * Ends the compaction and releases the waiting connections.
+     * @param databaseFile the file of the compacted database
+     */
+    public void compactionDone(File databaseFile) {
+        synchronized (this) {
+            compactedLength = databaseFile.length();
+            compactedTime = databaseFile.lastModified();
+        }
+        endCompaction();
+    }
+
+    /**
+     * Ends a compaction which has failed and releases the waiting connections, the database will be compacted again.
+     */
+    public void compactionFailed() {
+        endCompaction();
+    }
+
+    /**
+     * Starts a copy of the files of the database if the database is idle. Connections opened meanwhile wait for the end of the copy,
+     * as for a compaction.
+     * @return true if the copy can be done, the caller must call copyDone
+     */
+    public boolean beginCopy() {
+        return beginCompaction();
+    }
+
+    /**
+     * Ends the copy and releases the waiting connections.
+     */
+    public void copyDone() {
+        endCompaction();
+    }
+
+    /**
+     * Releases the connections waiting for the end of the compaction or of the copy.
+     */
+    private void endCompaction() {
+        CountDownLatch latch;
+        synchronized (this) {
+            latch = compaction;
+            compaction = null;
+        }
+        latch.countDown();
+    }
+
+    /**
+     * @return the read-only replicas of the database or null if they're not created
+     */
+    public synchronized ReplicaSet getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Sets the read-only replicas of the database if they're not set.
+     * @param replicas the created replicas
+     * @return the replicas of the database (the given replicas or the ones set by another connection)
+     */
+    public synchronized ReplicaSet setReplicas(ReplicaSet replicas) {
+        if (this.replicas == null) {
+            this.replicas = replicas;
+        }
+        return this.replicas;
+    }
+
+    /**
+     * Closes the read-only replicas of the database.
+     */
+    public synchronized void closeReplicas() {
+        if (replicas != null) {
+            replicas.close();
+            replicas = null;
+        }
+    }
+
+    /**
+     * @return the file system of the last opened connection (null if no connection has been opened)
+     */
+    public FileStore getFileStore() {
+        return fileStore;
+    }
+
+    /**
+     * Checks the rows of a result kept in memory asked by a connection. The value is global to the database:
+     * it is applied when the database is idle and a connection asking for another value is rejected while the database is opened.
+     * @param rows the rows asked by the connection (0 if the connection doesn't ask for a value)
+     * @return true if the value has to be applied to the database
+     * @throws SQLException if the database is opened with another value
+     */
+    public synchronized boolean checkResultMemoryRows(int rows) throws SQLException {
+        if (rows <= 0 || rows == resultMemoryRows) {
+            return false;
+        }
+        if (!isIdle()) {
+            throw new SQLException("The database '" + databaseName + "' is already opened with " + DriverSettings.RESULT_MEMORY_ROWS + "="
+                    + resultMemoryRows + ", " + rows + " asked");
+        }
+        return true;
+    }
+
+    /**
+     * Records the rows of a result kept in memory applied to the database.
+     * @param rows the applied value
+     */
+    public synchronized void setResultMemoryRows(int rows) {
+        this.resultMemoryRows = rows;
+    }
+
+    /**
+     * Adds a connection on this database.
+     * @param fileStore the file system used by the connection
+     */
+    public void acquire(FileStore fileStore) {
+        this.fileStore = fileStore;
+        if (connections.getAndIncrement() == 0) {
+            // used again, the scheduled close is no longer needed
+            Future<?> close = pendingClose;
+            if (close != null) {
+                close.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Removes a connection on this database.
+     * @return true if it was the last connection, in that case the caller should close the database (now or after the idle timeout)
+     */
+    public boolean release() {
+        return connections.decrementAndGet() == 0;
+    }
+
+}
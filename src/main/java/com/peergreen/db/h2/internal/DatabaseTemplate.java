@@ -0,0 +1,137 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+
+/**
+ * Creates a database by copying the files of a template database, before H2 opens it.
+ * The files are copied with FileChannel.transferTo (no copy through the Java heap). The template is never hard linked
+ * as H2 updates the database files in place: a write on the new database would change the template.
+ * @author Florent Benoit
+ */
+public final class DatabaseTemplate {
+
+    /**
+     * Suffixes of the files of a H2 database (page store and MVStore formats).
+     */
+    private static final String[] DATABASE_SUFFIXES = {".h2.db", ".mv.db"};
+
+    /**
+     * Utility class.
+     */
+    private DatabaseTemplate() {
+
+    }
+
+    /**
+     * @param database the database path (without suffix)
+     * @return true if the files of the given database exist
+     */
+    public static boolean exists(File database) {
+        for (String suffix : DATABASE_SUFFIXES) {
+            if (new File(database.getPath().concat(suffix)).isFile()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the template into the given database if the database doesn't exist.
+     * The files are first copied under a temporary name then published under their name, so H2 never sees a partial database.
+     * The template must not be opened during the copy.
+     * @param template the template database path (without suffix)
+     * @param database the new database path (without suffix)
+     * @return true if the database has been created, false if it already exists
+     * @throws SQLException if the template doesn't exist or can't be copied
+     */
+    public static boolean copy(File template, File database) throws SQLException {
+        if (exists(database)) {
+            return false;
+        }
+        if (!exists(template)) {
+            throw new SQLException("The template database " + template + " doesn't exist");
+        }
+        File parent = database.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new SQLException("Unable to create the directory " + parent);
+        }
+        boolean created = false;
+        for (String suffix : DATABASE_SUFFIXES) {
+            Path source = new File(template.getPath().concat(suffix)).toPath();
+            if (!Files.isRegularFile(source)) {
+                continue;
+            }
+            Path target = new File(database.getPath().concat(suffix)).toPath();
+            Path temporary = null;
+            try {
+                temporary = Files.createTempFile(parent.toPath(), database.getName(), ".tmp");
+                transfer(source, temporary);
+                publish(temporary, target);
+                created = true;
+            } catch (FileAlreadyExistsException e) {
+                // created at the same time by another connection
+                return false;
+            } catch (IOException e) {
+                throw new SQLException("Unable to copy the template database " + template + " to " + database, e);
+            } finally {
+                if (temporary != null) {
+                    try {
+                        Files.deleteIfExists(temporary);
+                    } catch (IOException e) {
+                        // ignored, only a temporary file
+                    }
+                }
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Gives the copied file its final name, without replacing an existing file.
+     * A link fails atomically if the target exists (a rename would replace it), rename is used if links are not supported.
+     */
+    private static void publish(Path temporary, Path target) throws IOException {
+        try {
+            Files.createLink(target, temporary);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.move(temporary, target);
+        }
+    }
+
+    /**
+     * Copies a file with FileChannel.transferTo.
+     */
+    private static void transfer(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            out.force(true);
+        }
+    }
+
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Settings handled by the Peergreen driver itself.
+ * These settings can be given in the URL (;KEY=VALUE), in the connection properties or globally with a system property (com.peergreen.db.h2.KEY).
+ * They are removed from the URL before the connection is given to H2 as H2 rejects unknown settings.
+ * @author Florent Benoit
+ */
+public final class DriverSettings {
+
+    /**
+     * Maximum number of physical connections of the pool (a value greater than 0 enables the pool).
+     */
+    public static final String POOL_MAX_SIZE = "POOL_MAX_SIZE";
+
+    /**
+     * Number of physical connections opened when the pool of a database is created.
+     */
+    public static final String POOL_MIN_SIZE = "POOL_MIN_SIZE";
+
+    /**
+     * Maximum number of idle physical connections kept by the pool.
+     */
+    public static final String POOL_MAX_IDLE = "POOL_MAX_IDLE";
+
+    /**
+     * Time in milliseconds during which an unused H2 server is kept started (0, the default, stops it with its last connection).
+     */
+    public static final String SERVER_IDLE_TIMEOUT = "SERVER_IDLE_TIMEOUT";
+
+    /**
+     * If true, connections are opened in embedded mode on the database of the server started by the driver (no TCP round-trip).
+     */
+    public static final String EMBEDDED = "EMBEDDED";
+
+    /**
+     * Statements (including the iteration of their result set) slower than this threshold in milliseconds are logged (disabled by default).
+     */
+    public static final String SLOW_QUERY_THRESHOLD = "SLOW_QUERY_THRESHOLD";
+
+    /**
+     * If true, timings of the statements are aggregated by SQL in the statistics of the driver.
+     */
+    public static final String QUERY_STATISTICS = "QUERY_STATISTICS";
+
+    /**
+     * Maximum number of prepared statements cached by each physical connection (0, the default, disables the cache).
+     */
+    public static final String STATEMENT_CACHE_SIZE = "STATEMENT_CACHE_SIZE";
+
+    /**
+     * Number of physical H2 servers shared by all the ports (0, the default, starts a dedicated server by port).
+     * The logical ports are not opened: only the pg+h2 URLs can be used to connect. The value of the first started port is used.
+     */
+    public static final String SHARED_SERVERS = "SHARED_SERVERS";
+
+    /**
+     * H2 file system of the databases handled by the driver: default, nio (FileChannel) or nioMapped (memory mapped files).
+     * All the connections opened at the same time on a database must use the same file system.
+     */
+    public static final String FILE_STORE = "FILE_STORE";
+
+    /**
+     * Maximum size in kilobytes of an in-memory database (jdbc:pg+h2:mem: URLs, disabled by default).
+     * When set, the database is stored on the H2 in-memory file system and the writes which would make a file of the database
+     * larger than this size fail: the statement or the commit needing more space gets an SQLException.
+     */
+    public static final String MEMORY_MAX_SIZE = "MEMORY_MAX_SIZE";
+
+    /**
+     * Template of a new database of a local TCP URL: a template registered on the driver or a database of the same port.
+     * If the database doesn't exist, the files of the template are copied before the database is opened. The template must be closed.
+     */
+    public static final String TEMPLATE = "TEMPLATE";
+
+    /**
+     * Number of rows fetched at once by the result sets of the statements created by the connections (0, the default, keeps the default of H2).
+     * Through TCP, the client only keeps this number of rows in memory while iterating a result set.
+     */
+    public static final String FETCH_SIZE = "FETCH_SIZE";
+
+    /**
+     * Maximum number of rows of a result kept in memory by the database, the other rows are buffered on disk (0, the default, keeps the H2 value).
+     * H2 computes the whole result of a query before the first row is read: as the servers run in the JVM of the driver, this bounds the heap used
+     * by large results. It is a global setting of the database, not of the connection: it is applied by the driver when the database is opened
+     * (or created for an in-memory database) and stored in the database. While the database is opened, a connection asking for another value is
+     * rejected, the connections without the setting use the value of the database.
+     */
+    public static final String RESULT_MEMORY_ROWS = "RESULT_MEMORY_ROWS";
+
+    /**
+     * Time in milliseconds during which Connection.isValid answers from the state of the server started by the driver
+     * (0, the default, always does a round-trip). The server is checked in background with this period and a round-trip
+     * is done when the last one of the connection is older than this time or has failed.
+     */
+    public static final String VALIDATION_INTERVAL = "VALIDATION_INTERVAL";
+
+    /**
+     * Number of read-only replicas of a database of a local TCP URL (0, the default, disables the replicas).
+     * Read-only connections (READONLY_ROUTE setting or setReadOnly(true)) use the least loaded replica.
+     */
+    public static final String READ_REPLICAS = "READ_REPLICAS";
+
+    /**
+     * Maximum age in milliseconds of the snapshot read by a connection on a replica (10 seconds by default).
+     * Replicas are refreshed with half this period, a connection on an older snapshot fails and has to be opened again.
+     */
+    public static final String REPLICA_MAX_STALENESS = "REPLICA_MAX_STALENESS";
+
+    /**
+     * If true, the connection is opened on a read-only replica of the database (the READ_REPLICAS setting must be set).
+     * If no replica has a snapshot within the staleness bound, the connection uses the database.
+     */
+    public static final String READONLY_ROUTE = "READONLY_ROUTE";
+
+    /**
+     * Time in milliseconds a database of a local TCP URL stays idle before being compacted (0, the default, disables the compaction).
+     * The compaction runs in a low priority thread while the server is started, connections on the database wait for its end.
+     */
+    public static final String COMPACT_IDLE_TIME = "COMPACT_IDLE_TIME";
+
+    /**
+     * Size in KB below which an idle database is not compacted (1024 by default).
+     */
+    public static final String COMPACT_MIN_SIZE = "COMPACT_MIN_SIZE";
+
+    /**
+     * Time in milliseconds after which a connection still opened is closed by force (0, the default, doesn't limit the connections).
+     */
+    public static final String MAX_HOLD_TIME = "MAX_HOLD_TIME";
+
+    /**
+     * Captures the stack of one open out of the given number, the stack is logged if the connection is leaked or held too long
+     * (0, the default, doesn't capture the stacks and 1 captures the stack of every open).
+     */
+    public static final String LEAK_TRACE_SAMPLING = "LEAK_TRACE_SAMPLING";
+
+    /**
+     * Maximum number of connections opened at the same time on a local port (0, the default, doesn't limit the connections).
+     * Connects above the limit wait in FIFO order. The limit given by the first connect is used until the server is stopped.
+     */
+    public static final String MAX_CONNECTIONS = "MAX_CONNECTIONS";
+
+    /**
+     * Maximum number of connections opened at the same time on a database of a local port (0, the default, doesn't limit the connections).
+     */
+    public static final String MAX_DATABASE_CONNECTIONS = "MAX_DATABASE_CONNECTIONS";
+
+    /**
+     * Maximum number of connects waiting for a limit of connections, the other connects fail immediately (not limited by default).
+     */
+    public static final String ADMISSION_QUEUE_SIZE = "ADMISSION_QUEUE_SIZE";
+
+    /**
+     * Time in milliseconds a connect waits for a limit of connections, or for the warm-up or the restore of its port, before failing (30 seconds by default).
+     */
+    public static final String ADMISSION_TIMEOUT = "ADMISSION_TIMEOUT";
+
+    /**
+     * Databases opened when the driver is validated: pg+h2 URLs separated by commas or white spaces (only as a system property,
+     * the warmup property of the com.peergreen.db.h2 configuration has precedence).
+     */
+    public static final String WARMUP = "WARMUP";
+
+    /**
+     * Time in milliseconds given to the opened connections to be closed when the driver is invalidated (only as a system property,
+     * the shutdowntimeout property of the com.peergreen.db.h2 configuration has precedence).
+     */
+    public static final String SHUTDOWN_TIMEOUT = "SHUTDOWN_TIMEOUT";
+
+    /**
+     * Prefix of the system properties used to set the default value of a setting.
+     */
+    public static final String SYSTEM_PROPERTY_PREFIX = "com.peergreen.db.h2.";
+
+    /**
+     * All the keys handled by the driver.
+     */
+    private static final Set<String> KEYS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(POOL_MAX_SIZE, POOL_MIN_SIZE, POOL_MAX_IDLE, SERVER_IDLE_TIMEOUT, EMBEDDED,
+            SLOW_QUERY_THRESHOLD, QUERY_STATISTICS, STATEMENT_CACHE_SIZE,
+            SHARED_SERVERS, FILE_STORE, MEMORY_MAX_SIZE, TEMPLATE,
+            FETCH_SIZE, RESULT_MEMORY_ROWS, VALIDATION_INTERVAL, READ_REPLICAS, REPLICA_MAX_STALENESS, READONLY_ROUTE,
+            COMPACT_IDLE_TIME, COMPACT_MIN_SIZE, MAX_HOLD_TIME, LEAK_TRACE_SAMPLING,
+            MAX_CONNECTIONS, MAX_DATABASE_CONNECTIONS, ADMISSION_QUEUE_SIZE, ADMISSION_TIMEOUT)));
+
+    /**
+     * Utility class.
+     */
+    private DriverSettings() {
+
+    }
+
+    /**
+     * @param key the key of the setting (in upper case)
+     * @return true if the given setting is handled by the driver
+     */
+    public static boolean isDriverSetting(String key) {
+        return KEYS.contains(key);
+    }
+
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.peergreen.db.h2.H2DriverStatisticsMXBean;
+import com.peergreen.db.h2.PortStatistics;
+import com.peergreen.db.h2.QueryStatistics;
+
+/**
+ * Statistics of the driver, by port number.
+ * @author Florent Benoit
+ */
+public class DriverStatistics implements H2DriverStatisticsMXBean {
+
+    /**
+     * Maximum number of SQL statements with statistics (least recently used are removed by evictQueries).
+     */
+    private static final int MAX_QUERIES = 1000;
+
+    private final ConcurrentMap<Integer, PortMetrics> ports = new ConcurrentHashMap<>();
+
+    /**
+     * False while the databases of the configuration are warmed up.
+     */
+    private volatile boolean ready = true;
+
+    /**
+     * Statistics by SQL. The executions don't lock the map, it may exceed MAX_QUERIES until the next eviction.
+     */
+    private final ConcurrentMap<QueryKey, QueryMetrics> queries = new ConcurrentHashMap<>();
+
+    /**
+     * Orders the statements from the least recently used.
+     */
+    private static final Comparator<Map.Entry<QueryKey, QueryMetrics>> LEAST_RECENTLY_USED = new Comparator<Map.Entry<QueryKey, QueryMetrics>>() {
+        @Override
+        public int compare(Map.Entry<QueryKey, QueryMetrics> first, Map.Entry<QueryKey, QueryMetrics> second) {
+            // nanoTime values are compared by their difference
+            long difference = first.getValue().getLastUsed() - second.getValue().getLastUsed();
+            return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+        }
+    };
+
+    /**
+     * Gets the counters of the given port (they're created on the first call).
+     * @param portNumber the port number
+     * @return the counters of the port
+     */
+    public PortMetrics getPortMetrics(int portNumber) {
+        PortMetrics metrics = ports.get(portNumber);
+        if (metrics == null) {
+            metrics = new PortMetrics(portNumber);
+            PortMetrics existing = ports.putIfAbsent(portNumber, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Record the execution of a SQL statement.
+     * @param portNumber the port number of the database
+     * @param databaseName the name of the database
+     * @param sql the SQL text
+     * @param nanos the time of the execution in nanoseconds
+     * @param rows the number of rows read or updated
+     */
+    public void recordQuery(int portNumber, String databaseName, String sql, long nanos, long rows) {
+        QueryKey key = new QueryKey(portNumber, databaseName, sql);
+        QueryMetrics metrics = queries.get(key);
+        if (metrics == null) {
+            metrics = new QueryMetrics(portNumber, databaseName, sql);
+            QueryMetrics existing = queries.putIfAbsent(key, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        metrics.record(nanos, rows);
+    }
+
+    /**
+     * Removes the least recently used statements above MAX_QUERIES. Called periodically by the driver, not by the executions.
+     */
+    public void evictQueries() {
+        int excess = queries.size() - MAX_QUERIES;
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<QueryKey, QueryMetrics>> entries = new ArrayList<>(queries.entrySet());
+        Collections.sort(entries, LEAST_RECENTLY_USED);
+        for (int i = 0; i < excess && i < entries.size(); i++) {
+            Map.Entry<QueryKey, QueryMetrics> entry = entries.get(i);
+            queries.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public List<QueryStatistics> getQueryStatistics() {
+        List<QueryStatistics> statistics = new ArrayList<>();
+        for (QueryMetrics query : queries.values()) {
+            statistics.add(query.snapshot());
+        }
+        return statistics;
+    }
+
+    @Override
+    public void resetQueryStatistics() {
+        queries.clear();
+    }
+
+    @Override
+    public List<PortStatistics> getPortStatistics() {
+        List<PortStatistics> statistics = new ArrayList<>();
+        for (PortMetrics metrics : ports.values()) {
+            statistics.add(metrics.snapshot());
+        }
+        return statistics;
+    }
+
+    @Override
+    public PortStatistics getPortStatistics(int portNumber) {
+        PortMetrics metrics = ports.get(portNumber);
+        if (metrics == null) {
+            return null;
+        }
+        return metrics.snapshot();
+    }
+
+    @Override
+    public int getOpenConnections() {
+        int openConnections = 0;
+        for (PortMetrics metrics : ports.values()) {
+            openConnections += metrics.getOpenConnections();
+        }
+        return openConnections;
+    }
+
+    @Override
+    public int getStartedServers() {
+        int startedServers = 0;
+        for (PortMetrics metrics : ports.values()) {
+            if (metrics.isServerUp()) {
+                startedServers++;
+            }
+        }
+        return startedServers;
+    }
+
+    /**
+     * Sets the readiness of the driver.
+     * @param ready false while the databases of the configuration are warmed up
+     */
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Key of the statistics of a SQL statement.
+     */
+    private static final class QueryKey {
+
+        private final int portNumber;
+        private final String databaseName;
+        private final String sql;
+        private final int hash;
+
+        public QueryKey(int portNumber, String databaseName, String sql) {
+            this.portNumber = portNumber;
+            this.databaseName = databaseName;
+            this.sql = sql;
+            int result = 31 * portNumber + (databaseName == null ? 0 : databaseName.hashCode());
+            this.hash = 31 * result + (sql == null ? 0 : sql.hashCode());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (!(object instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) object;
+            return hash == other.hash && portNumber == other.portNumber && (sql == null ? other.sql == null : sql.equals(other.sql))
+                    && (databaseName == null ? other.databaseName == null : databaseName.equals(other.databaseName));
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * H2 file system used to open the databases handled by the driver.
+ * H2 selects the file system with a prefix of the database name, the same prefix has to be used by all the opens of a database
+ * (server, embedded and users provisioning) else H2 sees two distinct databases on the same files.
+ * @author Florent Benoit
+ */
+public enum FileStore {
+
+    /**
+     * Default H2 file system (RandomAccessFile).
+     */
+    DEFAULT("default", ""),
+
+    /**
+     * FileChannel based file system.
+     */
+    NIO("nio", "nio:"),
+
+    /**
+     * Memory mapped file system.
+     */
+    NIO_MAPPED("nioMapped", "nioMapped:");
+
+    private final String value;
+
+    private final String prefix;
+
+    private FileStore(String value, String prefix) {
+        this.value = value;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return the value of the FILE_STORE setting
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Gets the name of the database for H2.
+     * @param databaseName the name of the database in the pg+h2 URL
+     * @return the name prefixed by the file system
+     */
+    public String getDatabasePath(String databaseName) {
+        return prefix.concat(databaseName);
+    }
+
+    /**
+     * Gets the file system of a connection.
+     * @param connectionURL the URL of the connection
+     * @param info the connection properties
+     * @return the file system of the FILE_STORE setting (default if not set)
+     * @throws SQLException if the value of the setting is invalid
+     */
+    public static FileStore get(ConnectionURL connectionURL, Properties info) throws SQLException {
+        String setting = connectionURL.getSetting(DriverSettings.FILE_STORE, info);
+        if (setting == null) {
+            return DEFAULT;
+        }
+        for (FileStore fileStore : values()) {
+            if (fileStore.value.equalsIgnoreCase(setting.trim())) {
+                return fileStore;
+            }
+        }
+        throw new SQLException("Invalid value '" + setting + "' for the setting " + DriverSettings.FILE_STORE + " (expected default, nio or nioMapped)");
+    }
+
+}
@@ -0,0 +1,324 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.h2.tools.Csv;
+
+import com.peergreen.db.h2.BulkLoadListener;
+import com.peergreen.db.h2.BulkLoadOptions;
+import com.peergreen.db.h2.BulkLoader;
+
+/**
+ * Bulk loader of a connection of the driver.
+ * Without a fixed batch size, the size is doubled or halved after each batch, keeping the direction while the throughput
+ * of the batches improves (hill climbing between MIN_BATCH_SIZE and MAX_BATCH_SIZE).
+ * @author Florent Benoit
+ */
+public class H2BulkLoader implements BulkLoader {
+
+    private static final Logger LOGGER = Logger.getLogger(H2BulkLoader.class.getName());
+
+    private static final int INITIAL_BATCH_SIZE = 256;
+
+    private static final int MIN_BATCH_SIZE = 16;
+
+    private static final int MAX_BATCH_SIZE = 16384;
+
+    /**
+     * Change of throughput below which the batch size keeps its direction.
+     */
+    private static final double THROUGHPUT_TOLERANCE = 0.95;
+
+    private final Connection connection;
+
+    /**
+     * Build a loader on the given connection.
+     * @param connection the connection of the driver
+     */
+    public H2BulkLoader(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Source of the rows of a load.
+     */
+    private interface Rows {
+
+        /**
+         * @return the values of the next row or null at the end
+         */
+        Object[] next() throws SQLException;
+    }
+
+    @Override
+    public long load(String table, String[] columns, final Iterator<Object[]> rows, BulkLoadOptions options) throws SQLException {
+        return load(table, columns, new Rows() {
+            @Override
+            public Object[] next() {
+                return rows.hasNext() ? rows.next() : null;
+            }
+        }, options);
+    }
+
+    @Override
+    public long load(String table, String[] columns, final ResultSet rows, BulkLoadOptions options) throws SQLException {
+        String[] loadedColumns = columns;
+        if (loadedColumns == null) {
+            // columns of the result set
+            ResultSetMetaData metaData = rows.getMetaData();
+            loadedColumns = new String[metaData.getColumnCount()];
+            for (int i = 0; i < loadedColumns.length; i++) {
+                loadedColumns[i] = metaData.getColumnLabel(i + 1);
+            }
+        }
+        final int columnCount = loadedColumns.length;
+        return load(table, loadedColumns, new Rows() {
+            @Override
+            public Object[] next() throws SQLException {
+                if (!rows.next()) {
+                    return null;
+                }
+                Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = rows.getObject(i + 1);
+                }
+                return row;
+            }
+        }, options);
+    }
+
+    @Override
+    public long loadCsv(String table, String[] columns, Reader csv, BulkLoadOptions options) throws SQLException {
+        ResultSet rows;
+        try {
+            rows = new Csv().read(csv, columns);
+        } catch (IOException e) {
+            throw new SQLException("Unable to read the CSV of the table " + table, e);
+        }
+        try {
+            // without columns, the header of the CSV gives the columns of the result set
+            return load(table, columns, rows, options);
+        } finally {
+            rows.close();
+        }
+    }
+
+    /**
+     * Inserts the rows with batches and intervals of commits.
+     */
+    private long load(String table, String[] columns, Rows rows, BulkLoadOptions options) throws SQLException {
+        if (options == null) {
+            options = new BulkLoadOptions();
+        }
+        boolean autoCommit = connection.getAutoCommit();
+        Map<String, String> indexes = Collections.emptyMap();
+        if (options.isRebuildIndexes()) {
+            indexes = dropIndexes(table);
+        }
+        long startTime = System.nanoTime();
+        long inserted = 0;
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(insertSql(table, columns))) {
+                boolean tuned = options.getBatchSize() <= 0;
+                int batchSize = tuned ? INITIAL_BATCH_SIZE : options.getBatchSize();
+                boolean growing = true;
+                double lastThroughput = 0;
+                int pending = 0;
+                long uncommitted = 0;
+                long batchTime = System.nanoTime();
+                long commitTime = batchTime;
+                Object[] row;
+                while ((row = rows.next()) != null) {
+                    for (int i = 0; i < columns.length; i++) {
+                        statement.setObject(i + 1, row[i]);
+                    }
+                    statement.addBatch();
+                    pending++;
+                    if (pending < batchSize) {
+                        continue;
+                    }
+                    statement.executeBatch();
+                    uncommitted += pending;
+                    long now = System.nanoTime();
+                    if (tuned) {
+                        double throughput = (double) pending / Math.max(1, now - batchTime);
+                        if (lastThroughput > 0 && throughput < lastThroughput * THROUGHPUT_TOLERANCE) {
+                            growing = !growing;
+                        }
+                        batchSize = growing ? Math.min(MAX_BATCH_SIZE, batchSize * 2) : Math.max(MIN_BATCH_SIZE, batchSize / 2);
+                        lastThroughput = throughput;
+                    }
+                    pending = 0;
+                    batchTime = now;
+                    if (isCommitDue(options, uncommitted, now - commitTime)) {
+                        connection.commit();
+                        inserted += uncommitted;
+                        uncommitted = 0;
+                        commitTime = System.nanoTime();
+                        progress(options.getListener(), table, inserted, startTime, batchSize);
+                    }
+                }
+                if (pending > 0) {
+                    statement.executeBatch();
+                    uncommitted += pending;
+                }
+                connection.commit();
+                inserted += uncommitted;
+                progress(options.getListener(), table, inserted, startTime, batchSize);
+            } catch (SQLException | RuntimeException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackException) {
+                    e.addSuppressed(rollbackException);
+                }
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            // the failure of the load is reported, not the failure of the restore of the connection
+            try {
+                restore(autoCommit, indexes);
+            } catch (SQLException restoreException) {
+                e.addSuppressed(restoreException);
+            }
+            throw e;
+        }
+        restore(autoCommit, indexes);
+        return inserted;
+    }
+
+    /**
+     * Restores the auto-commit mode of the connection and creates the indexes dropped before the load, even if one of them fails.
+     */
+    private void restore(boolean autoCommit, Map<String, String> indexes) throws SQLException {
+        SQLException failure = null;
+        try {
+            connection.setAutoCommit(autoCommit);
+        } catch (SQLException e) {
+            failure = e;
+        }
+        try {
+            createIndexes(indexes);
+        } catch (SQLException e) {
+            if (failure == null) {
+                failure = e;
+            } else {
+                failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return true if the uncommitted rows should be committed
+     */
+    private static boolean isCommitDue(BulkLoadOptions options, long uncommitted, long elapsed) {
+        if (options.getCommitInterval() > 0) {
+            return uncommitted >= options.getCommitInterval();
+        }
+        return elapsed >= TimeUnit.MILLISECONDS.toNanos(options.getCommitTime());
+    }
+
+    /**
+     * Reports the progress of the load.
+     */
+    private static void progress(BulkLoadListener listener, String table, long rows, long startTime, int batchSize) {
+        double rowsPerSecond = rows * 1e9 / Math.max(1, System.nanoTime() - startTime);
+        LOGGER.log(Level.FINE, "{0} rows loaded in {1} ({2} rows/s, batches of {3} rows)", new Object[] {rows, table, (long) rowsPerSecond, batchSize});
+        if (listener != null) {
+            listener.progress(rows, rowsPerSecond, batchSize);
+        }
+    }
+
+    /**
+     * @return the INSERT statement of the given columns
+     */
+    private static String insertSql(String table, String[] columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append('(');
+        StringBuilder values = new StringBuilder(" VALUES(");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+                values.append(", ");
+            }
+            sql.append(columns[i]);
+            values.append('?');
+        }
+        return sql.append(')').append(values).append(')').toString();
+    }
+
+    /**
+     * Drops the secondary indexes of the table (the indexes of the primary key and of the constraints are kept).
+     * @return the SQL creating the dropped indexes, by name
+     */
+    private Map<String, String> dropIndexes(String table) throws SQLException {
+        // identifiers are stored in upper case unless they're quoted
+        String tableName;
+        if (table.startsWith("\"") && table.endsWith("\"")) {
+            tableName = table.substring(1, table.length() - 1).replace("\"\"", "\"");
+        } else {
+            tableName = table.toUpperCase(Locale.ENGLISH);
+        }
+        Map<String, String> indexes = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT DISTINCT INDEX_NAME, SQL FROM INFORMATION_SCHEMA.INDEXES "
+                + "WHERE TABLE_SCHEMA = SCHEMA() AND TABLE_NAME = ? AND PRIMARY_KEY = FALSE AND IS_GENERATED = FALSE")) {
+            statement.setString(1, tableName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    indexes.put(resultSet.getString(1), resultSet.getString(2));
+                }
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (String index : indexes.keySet()) {
+                statement.execute("DROP INDEX ".concat(H2Server.quoteIdentifier(index)));
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Creates the indexes dropped before the load.
+     */
+    private void createIndexes(Map<String, String> indexes) throws SQLException {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : indexes.values()) {
+                statement.execute(sql);
+            }
+        }
+        LOGGER.log(Level.FINE, "{0} indexes created in {1} ms", new Object[] {indexes.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)});
+    }
+
+}
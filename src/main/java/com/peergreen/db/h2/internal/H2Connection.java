@@ -0,0 +1,950 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.lang.ref.ReferenceQueue;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.peergreen.db.h2.BulkLoader;
+import com.peergreen.db.h2.H2Driver;
+
+/**
+ * Connection returned by the driver. It delegates all the calls to the H2 connection and notify the driver when it is closed.
+ * Pooled connections are reset and given back to the pool instead of being closed.
+ * Statements are wrapped when they're measured, when the prepared statements are cached or when isValid answers from the state of the server.
+ * @author Florent Benoit
+ */
+public class H2Connection implements Connection {
+
+    private final H2Driver h2Driver;
+    private final int portNumber;
+    private final String databaseName;
+    private final Connection wrappedConnection;
+
+    /**
+     * Pool of the connection (null if the connection is not pooled).
+     */
+    private final H2ConnectionPool pool;
+
+    /**
+     * Key of the connection in the pool.
+     */
+    private final H2ConnectionPool.Key poolKey;
+
+    /**
+     * Statements opened on a pooled connection, closed when the connection is given back to the pool.
+     */
+    private final List<Statement> statements;
+
+    /**
+     * Isolation level, read-only flag and schema before they've been changed (used to reset a pooled connection).
+     */
+    private int initialIsolation = -1;
+    private Boolean initialReadOnly;
+    private String initialSchema;
+
+    /**
+     * Schema set by the application (null if not changed), it is set again on each connection on a replica.
+     */
+    private String schema;
+
+    /**
+     * Set by the first close, a close and a forced close running at the same time don't both release the physical connection.
+     */
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Receives the timings of the statements (null if statements are not measured).
+     */
+    private QueryLog queryLog;
+
+    /**
+     * Cache of the prepared statements of the physical connection (null if disabled).
+     */
+    private StatementCache statementCache;
+
+    /**
+     * In-memory database of the connection (null if the connection is not on an in-memory database of the driver).
+     */
+    private MemoryDatabaseEntry memoryDatabase;
+
+    /**
+     * Fetch size given to the statements created by this connection (0 to keep the default of H2).
+     */
+    private int defaultFetchSize;
+
+    /**
+     * Server entry whose state answers isValid (null if isValid always does a round-trip).
+     */
+    private ServerEntry validationEntry;
+
+    /**
+     * Time in nanoseconds during which isValid answers from the state of the server.
+     */
+    private long validationInterval;
+
+    /**
+     * Time (System.nanoTime) of the last successful round-trip of isValid or of the open.
+     */
+    private volatile long lastValidation;
+
+    /**
+     * False after a failed round-trip or a failed call on the session, the next isValid does a round-trip.
+     */
+    private volatile boolean validated;
+
+    /**
+     * Read-only replicas of the database (null if the connection is not routed to replicas).
+     */
+    private ReplicaSet replicaSet;
+
+    /**
+     * Properties used to open a connection on a replica.
+     */
+    private Properties replicaInfo;
+
+    /**
+     * Connection on a replica while the connection is read-only (null if the connection uses the database).
+     */
+    private ReplicaSet.ReplicaConnection replicaConnection;
+
+    /**
+     * Statements created on the connection on a replica, a stale replica is only replaced when they're all closed.
+     */
+    private final List<Statement> replicaStatements = new ArrayList<>();
+
+    /**
+     * Reference kept by the driver while the connection is opened (null if the connection is not tracked).
+     */
+    private H2ConnectionReference reference;
+
+    /**
+     * Build a connection around the given H2 connection.
+     * @param driver the PG driver used to be notified
+     * @param portNumber the port number of the database
+     * @param connection the connection to wrap
+     */
+    public H2Connection(H2Driver driver, int portNumber, Connection connection) {
+        this(driver, portNumber, null, connection, null, null);
+    }
+
+    /**
+     * Build a connection around the given H2 connection.
+     * @param driver the PG driver used to be notified
+     * @param portNumber the port number of the database
+     * @param databaseName the name of the database
+     * @param connection the connection to wrap
+     */
+    public H2Connection(H2Driver driver, int portNumber, String databaseName, Connection connection) {
+        this(driver, portNumber, databaseName, connection, null, null);
+    }
+
+    /**
+     * Build a connection around a connection of the given pool.
+     * @param driver the PG driver used to be notified
+     * @param portNumber the port number of the database
+     * @param databaseName the name of the database
+     * @param connection the connection to wrap
+     * @param pool the pool of the connection
+     * @param poolKey the key of the connection in the pool
+     */
+    public H2Connection(H2Driver driver, int portNumber, String databaseName, Connection connection, H2ConnectionPool pool, H2ConnectionPool.Key poolKey) {
+        this.h2Driver = driver;
+        this.portNumber = portNumber;
+        this.databaseName = databaseName;
+        this.wrappedConnection = connection;
+        this.pool = pool;
+        this.poolKey = poolKey;
+        if (pool != null) {
+            this.statements = new ArrayList<>();
+        } else {
+            this.statements = null;
+        }
+    }
+
+    /**
+     * @return the port number of the database
+     */
+    public int getPortNumber() {
+        return portNumber;
+    }
+
+    /**
+     * @return the name of the database (null if unknown)
+     */
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    /**
+     * @return the wrapped connection (or the connection on a replica) if this connection is still open
+     * @throws SQLException if the connection has been closed or if its replica is older than the staleness bound while statements
+     * or a transaction are opened on it
+     */
+    private Connection connection() throws SQLException {
+        if (closed.get()) {
+            throw new SQLException("The connection is closed");
+        }
+        ReplicaSet.ReplicaConnection replica = replicaConnection;
+        if (replica != null && replica.isStale(replicaSet.getMaxStaleness())) {
+            if (hasOpenReplicaStatements() || !replica.getConnection().getAutoCommit()) {
+                throw new SQLException("The snapshot of the replica of the database '" + databaseName + "' is older than "
+                        + TimeUnit.NANOSECONDS.toMillis(replicaSet.getMaxStaleness()) + " ms, the statements and the transaction opened on it have to be closed");
+            }
+            // nothing read from the old snapshot is still in use, continue on the current generation
+            routeToDatabase();
+            routeToReplica();
+            replica = replicaConnection;
+        }
+        if (replica != null) {
+            return replica.getConnection();
+        }
+        return wrappedConnection;
+    }
+
+    /**
+     * @return true if some statements created on the connection on a replica are still opened
+     */
+    private boolean hasOpenReplicaStatements() throws SQLException {
+        forgetClosed(replicaStatements);
+        return !replicaStatements.isEmpty();
+    }
+
+    /**
+     * Removes the closed statements of the given list. The unwrapped statements don't notify their close.
+     * @param trackedStatements the tracked statements
+     * @throws SQLException if the state of a statement can't be read
+     */
+    private static void forgetClosed(List<Statement> trackedStatements) throws SQLException {
+        Iterator<Statement> iterator = trackedStatements.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isClosed()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Routes this connection to a replica of the database while it is read-only.
+     * @param replicaSet the read-only replicas of the database
+     * @param info the connection properties
+     */
+    public void setReplicas(ReplicaSet replicaSet, Properties info) {
+        this.replicaSet = replicaSet;
+        this.replicaInfo = info;
+    }
+
+    /**
+     * @return true if the connection currently uses a replica
+     */
+    public boolean isRoutedToReplica() {
+        return replicaConnection != null;
+    }
+
+    /**
+     * Uses the least loaded replica (the connection keeps using the database if no replica is within the staleness bound).
+     */
+    private void routeToReplica() throws SQLException {
+        if (replicaSet != null && replicaConnection == null) {
+            ReplicaSet.ReplicaConnection replica = replicaSet.connect(replicaInfo);
+            if (replica != null && schema != null) {
+                try {
+                    executeSetSchema(replica.getConnection(), schema);
+                } catch (SQLException e) {
+                    try {
+                        replica.close();
+                    } catch (SQLException closeException) {
+                        e.addSuppressed(closeException);
+                    }
+                    throw e;
+                }
+            }
+            replicaConnection = replica;
+            if (reference != null) {
+                reference.setReplicaConnection(replicaConnection);
+            }
+        }
+    }
+
+    /**
+     * Uses the database again.
+     */
+    private void routeToDatabase() throws SQLException {
+        ReplicaSet.ReplicaConnection replica = replicaConnection;
+        if (replica != null) {
+            replicaConnection = null;
+            replicaStatements.clear();
+            if (reference != null) {
+                reference.setReplicaConnection(null);
+            }
+            replica.close();
+        }
+    }
+
+    /**
+     * Measure the statements of this connection.
+     * @param queryLog the log receiving the timings of the statements
+     */
+    public void setQueryLog(QueryLog queryLog) {
+        this.queryLog = queryLog;
+    }
+
+    /**
+     * Cache the prepared statements of this connection.
+     * @param statementCache the cache of the physical connection
+     */
+    public void setStatementCache(StatementCache statementCache) {
+        this.statementCache = statementCache;
+    }
+
+    /**
+     * @return the cache of the prepared statements or null if disabled
+     */
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * Sets the fetch size of the statements created by this connection.
+     * @param defaultFetchSize the number of rows fetched at once by the result sets (0 to keep the default of H2)
+     */
+    public void setDefaultFetchSize(int defaultFetchSize) {
+        this.defaultFetchSize = defaultFetchSize;
+    }
+
+    /**
+     * Answers isValid from the state of the server of the port during the given interval.
+     * @param entry the entry of the server of the connection
+     * @param interval the time in milliseconds after which isValid does a round-trip
+     */
+    public void setValidation(ServerEntry entry, long interval) {
+        this.validationEntry = entry;
+        this.validationInterval = TimeUnit.MILLISECONDS.toNanos(interval);
+        // just opened
+        this.lastValidation = System.nanoTime();
+        this.validated = true;
+    }
+
+    /**
+     * A call on the session has failed, the session may have been closed by the server: the next isValid does a round-trip.
+     */
+    protected void failed() {
+        validated = false;
+    }
+
+    /**
+     * Sets the in-memory database of this connection.
+     * @param memoryDatabase the in-memory database handled by the driver
+     */
+    public void setMemoryDatabase(MemoryDatabaseEntry memoryDatabase) {
+        this.memoryDatabase = memoryDatabase;
+    }
+
+    /**
+     * @return the in-memory database of this connection or null if it's not an in-memory database of the driver
+     */
+    public MemoryDatabaseEntry getMemoryDatabase() {
+        return memoryDatabase;
+    }
+
+    /**
+     * Creates the reference kept by the driver while this connection is opened.
+     * @param queue the queue receiving the reference if this connection is garbage collected without being closed
+     * @param maxHoldTime the time in nanoseconds after which the connection is closed by force (0 if not limited)
+     * @param openStack the stack of the open (may be null)
+     * @return the reference on this connection
+     */
+    public H2ConnectionReference createReference(ReferenceQueue<? super H2Connection> queue, long maxHoldTime, Throwable openStack) {
+        reference = new H2ConnectionReference(this, queue, portNumber, databaseName, memoryDatabase, wrappedConnection, pool, poolKey, maxHoldTime,
+                openStack);
+        return reference;
+    }
+
+    /**
+     * @return the reference kept by the driver or null if the connection is not tracked
+     */
+    public H2ConnectionReference getReference() {
+        return reference;
+    }
+
+    /**
+     * Notify that a SQL statement is going to be executed on this connection.
+     * @param sql the SQL statement
+     */
+    protected void executing(String sql) {
+        if (statementCache != null) {
+            statementCache.executing(sql);
+        }
+    }
+
+    /**
+     * Keep the statements of pooled connections in order to close them when the connection is given back,
+     * and the statements of the connection on a replica.
+     */
+    private void track(Statement statement) throws SQLException {
+        if (statements != null) {
+            // a connection held for a long time doesn't keep its closed statements
+            forgetClosed(statements);
+            statements.add(statement);
+        }
+        if (replicaConnection != null) {
+            forgetClosed(replicaStatements);
+            replicaStatements.add(statement);
+        }
+    }
+
+    /**
+     * Forget a statement closed by the application.
+     * @param statement the closed statement
+     */
+    protected void untrack(Statement statement) {
+        if (statements != null) {
+            remove(statements, statement);
+        }
+        remove(replicaStatements, statement);
+    }
+
+    /**
+     * Removes the given statement from the tracked statements.
+     */
+    private static void remove(List<Statement> trackedStatements, Statement statement) {
+        // statements are usually closed in the reverse order
+        for (int i = trackedStatements.size() - 1; i >= 0; i--) {
+            if (trackedStatements.get(i) == statement) {
+                trackedStatements.remove(i);
+                return;
+            }
+        }
+    }
+
+    private Statement statement(Statement statement) throws SQLException {
+        if (defaultFetchSize > 0) {
+            statement.setFetchSize(defaultFetchSize);
+        }
+        if (queryLog != null || statementCache != null || validationEntry != null) {
+            statement = new H2Statement(this, statement, queryLog);
+        }
+        track(statement);
+        return statement;
+    }
+
+    private PreparedStatement statement(String sql, PreparedStatement preparedStatement) throws SQLException {
+        if (defaultFetchSize > 0) {
+            preparedStatement.setFetchSize(defaultFetchSize);
+        }
+        if (queryLog != null || statementCache != null || validationEntry != null) {
+            preparedStatement = new H2PreparedStatement(this, sql, preparedStatement, queryLog);
+        }
+        track(preparedStatement);
+        return preparedStatement;
+    }
+
+    private CallableStatement statement(String sql, CallableStatement callableStatement) throws SQLException {
+        if (defaultFetchSize > 0) {
+            callableStatement.setFetchSize(defaultFetchSize);
+        }
+        if (queryLog != null || statementCache != null || validationEntry != null) {
+            callableStatement = new H2CallableStatement(this, sql, callableStatement, queryLog);
+        }
+        track(callableStatement);
+        return callableStatement;
+    }
+
+    /**
+     * When the close method is called, notify the driver that we've closed a connection.
+     */
+    @Override
+    public void close() throws SQLException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            routeToDatabase();
+            if (pool == null) {
+                wrappedConnection.close();
+            } else {
+                release();
+            }
+        } finally {
+            // closing, notifying the H2 driver
+            h2Driver.closing(this);
+        }
+    }
+
+    /**
+     * Reset the state of the physical connection and give it back to the pool.
+     */
+    private void release() {
+        try {
+            // cached statements are given back to the cache when they're closed
+            for (Statement statement : new ArrayList<>(statements)) {
+                statement.close();
+            }
+            statements.clear();
+            if (!wrappedConnection.getAutoCommit()) {
+                wrappedConnection.rollback();
+                wrappedConnection.setAutoCommit(true);
+            }
+            if (initialIsolation != -1) {
+                wrappedConnection.setTransactionIsolation(initialIsolation);
+            }
+            if (initialReadOnly != null) {
+                wrappedConnection.setReadOnly(initialReadOnly);
+            }
+            if (initialSchema != null) {
+                executeSetSchema(wrappedConnection, initialSchema);
+            }
+            wrappedConnection.clearWarnings();
+        } catch (SQLException e) {
+            // connection can't be reused
+            pool.discard(poolKey, wrappedConnection);
+            return;
+        }
+        pool.release(poolKey, wrappedConnection, statementCache);
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed.get() || wrappedConnection.isClosed();
+    }
+
+    /**
+     * H2 connection doesn't support abort so the physical connection is closed by the caller thread.
+     */
+    @Override
+    public void abort(Executor executor) throws SQLException {
+        forceClose();
+    }
+
+    /**
+     * Close the physical connection without resetting it (pooled connections are not reused).
+     * @throws SQLException if the physical connection cannot be closed
+     */
+    public void forceClose() throws SQLException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            routeToDatabase();
+            if (pool == null) {
+                wrappedConnection.close();
+            } else {
+                pool.discard(poolKey, wrappedConnection);
+            }
+        } finally {
+            h2Driver.closing(this);
+        }
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return statement(connection().createStatement());
+    }
+
+    /**
+     * Prepared statements with the default result set type, concurrency and holdability are taken from the cache if it's enabled.
+     */
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        Connection connection = connection();
+        if (statementCache == null || replicaConnection != null) {
+            // cached statements are statements of the database
+            return statement(sql, connection.prepareStatement(sql));
+        }
+        int generation = statementCache.getGeneration();
+        PreparedStatement preparedStatement = statementCache.take(sql);
+        if (preparedStatement == null) {
+            preparedStatement = connection.prepareStatement(sql);
+        }
+        if (defaultFetchSize > 0) {
+            // a cached statement may have been changed by its previous user
+            preparedStatement.setFetchSize(defaultFetchSize);
+        }
+        H2PreparedStatement cachedStatement = new H2PreparedStatement(this, sql, preparedStatement, queryLog, statementCache, generation);
+        track(cachedStatement);
+        return cachedStatement;
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        return statement(sql, connection().prepareCall(sql));
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return statement(connection().createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return statement(sql, connection().prepareStatement(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return statement(sql, connection().prepareCall(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return statement(connection().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return statement(sql, connection().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return statement(sql, connection().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return statement(sql, connection().prepareStatement(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return statement(sql, connection().prepareStatement(sql, columnIndexes));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return statement(sql, connection().prepareStatement(sql, columnNames));
+    }
+
+    @Override
+    public String nativeSQL(String sql) throws SQLException {
+        return connection().nativeSQL(sql);
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        try {
+            connection().setAutoCommit(autoCommit);
+        } catch (SQLException e) {
+            failed();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        return connection().getAutoCommit();
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        try {
+            connection().commit();
+        } catch (SQLException e) {
+            failed();
+            throw e;
+        }
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        try {
+            connection().rollback();
+        } catch (SQLException e) {
+            failed();
+            throw e;
+        }
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        return connection().getMetaData();
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        if (closed.get()) {
+            throw new SQLException("The connection is closed");
+        }
+        // the work of a transaction would be left on the previous connection
+        boolean rerouted = readOnly ? replicaSet != null && replicaConnection == null : replicaConnection != null;
+        if (rerouted && !connection().getAutoCommit()) {
+            throw new SQLException("The read-only mode of a connection routed to the replicas can't be changed during a transaction");
+        }
+        if (readOnly) {
+            routeToReplica();
+        } else {
+            routeToDatabase();
+        }
+        if (pool != null && initialReadOnly == null) {
+            initialReadOnly = wrappedConnection.isReadOnly();
+        }
+        wrappedConnection.setReadOnly(readOnly);
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        if (replicaConnection != null) {
+            return true;
+        }
+        return connection().isReadOnly();
+    }
+
+    @Override
+    public void setCatalog(String catalog) throws SQLException {
+        connection().setCatalog(catalog);
+    }
+
+    @Override
+    public String getCatalog() throws SQLException {
+        return connection().getCatalog();
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        Connection connection = connection();
+        if (pool != null && initialIsolation == -1) {
+            initialIsolation = connection.getTransactionIsolation();
+        }
+        connection.setTransactionIsolation(level);
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        return connection().getTransactionIsolation();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return connection().getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        connection().clearWarnings();
+    }
+
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        return connection().getTypeMap();
+    }
+
+    @Override
+    public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+        connection().setTypeMap(map);
+    }
+
+    @Override
+    public void setHoldability(int holdability) throws SQLException {
+        connection().setHoldability(holdability);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return connection().getHoldability();
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        return connection().setSavepoint();
+    }
+
+    @Override
+    public Savepoint setSavepoint(String name) throws SQLException {
+        return connection().setSavepoint(name);
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        connection().rollback(savepoint);
+    }
+
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        connection().releaseSavepoint(savepoint);
+    }
+
+    @Override
+    public Clob createClob() throws SQLException {
+        return connection().createClob();
+    }
+
+    @Override
+    public Blob createBlob() throws SQLException {
+        return connection().createBlob();
+    }
+
+    @Override
+    public NClob createNClob() throws SQLException {
+        return connection().createNClob();
+    }
+
+    @Override
+    public SQLXML createSQLXML() throws SQLException {
+        return connection().createSQLXML();
+    }
+
+    @Override
+    public boolean isValid(int timeout) throws SQLException {
+        if (closed.get()) {
+            return false;
+        }
+        ReplicaSet.ReplicaConnection replica = replicaConnection;
+        if (replica != null) {
+            // embedded connection, no round-trip
+            return !replica.isStale(replicaSet.getMaxStaleness()) && replica.getConnection().isValid(timeout);
+        }
+        ServerEntry entry = validationEntry;
+        if (entry == null) {
+            return wrappedConnection.isValid(timeout);
+        }
+        // no round-trip while the server is healthy and the session hasn't failed
+        if (validated && System.nanoTime() - lastValidation < validationInterval && entry.isHealthy(validationInterval)
+                && !wrappedConnection.isClosed()) {
+            return true;
+        }
+        boolean valid = wrappedConnection.isValid(timeout);
+        if (valid) {
+            lastValidation = System.nanoTime();
+        }
+        validated = valid;
+        return valid;
+    }
+
+    @Override
+    public void setClientInfo(String name, String value) throws SQLClientInfoException {
+        if (closed.get()) {
+            throw new SQLClientInfoException("The connection is closed", null);
+        }
+        wrappedConnection.setClientInfo(name, value);
+    }
+
+    @Override
+    public void setClientInfo(Properties properties) throws SQLClientInfoException {
+        if (closed.get()) {
+            throw new SQLClientInfoException("The connection is closed", null);
+        }
+        wrappedConnection.setClientInfo(properties);
+    }
+
+    @Override
+    public String getClientInfo(String name) throws SQLException {
+        return connection().getClientInfo(name);
+    }
+
+    @Override
+    public Properties getClientInfo() throws SQLException {
+        return connection().getClientInfo();
+    }
+
+    @Override
+    public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+        return connection().createArrayOf(typeName, elements);
+    }
+
+    @Override
+    public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+        return connection().createStruct(typeName, attributes);
+    }
+
+    /**
+     * H2 connection doesn't implement the JDBC 4.1 methods so the schema is set with SQL.
+     */
+    @Override
+    public void setSchema(String schema) throws SQLException {
+        if (pool != null && initialSchema == null) {
+            initialSchema = getSchema(wrappedConnection);
+        }
+        Connection connection = connection();
+        // the database and the replica use the same schema
+        executeSetSchema(wrappedConnection, schema);
+        if (connection != wrappedConnection) {
+            executeSetSchema(connection, schema);
+        }
+        this.schema = schema;
+    }
+
+    @Override
+    public String getSchema() throws SQLException {
+        return getSchema(connection());
+    }
+
+    private static String getSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("CALL SCHEMA()")) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    private void executeSetSchema(Connection connection, String schema) throws SQLException {
+        if (statementCache != null && connection == wrappedConnection) {
+            // unqualified names of the cached statements have been resolved with the previous schema
+            statementCache.invalidate();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET SCHEMA \"" + schema.replace("\"", "\"\"") + "\"");
+        }
+    }
+
+    @Override
+    public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+        throw new SQLFeatureNotSupportedException("H2 driver does not support this feature");
+    }
+
+    @Override
+    public int getNetworkTimeout() throws SQLException {
+        throw new SQLFeatureNotSupportedException("H2 driver does not support this feature");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface == BulkLoader.class) {
+            return iface.cast(new H2BulkLoader(this));
+        }
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        if (iface.isInstance(wrappedConnection)) {
+            return iface.cast(wrappedConnection);
+        }
+        throw new SQLException("The connection is not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface == BulkLoader.class || iface.isInstance(this) || iface.isInstance(wrappedConnection);
+    }
+
+}
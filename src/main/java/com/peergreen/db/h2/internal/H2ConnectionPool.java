@@ -0,0 +1,290 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+import org.h2.jdbc.JdbcConnection;
+
+/**
+ * Pool of physical H2 connections.
+ * Connections are pooled by port number, database, user and H2 URL.
+ * Only the idle connections are kept by the pool, the connections in use are counted by the driver.
+ * @author Florent Benoit
+ */
+public class H2ConnectionPool {
+
+    /**
+     * Partitions of the pool.
+     */
+    private final Map<Key, Partition> partitions = new HashMap<>();
+
+    /**
+     * Gets a physical connection for the given key. The partition is created (and filled with its minimum size) on the first call.
+     * @param key the key of the partition
+     * @param info the properties used to create the physical connections
+     * @param minSize number of connections opened when the partition is created
+     * @param maxSize maximum number of physical connections of the partition
+     * @param maxIdle maximum number of idle connections kept by the partition
+     * @return a physical connection
+     * @throws SQLException if the connection cannot be created or if the pool is exhausted
+     */
+    public Connection borrow(Key key, Properties info, int minSize, int maxSize, int maxIdle) throws SQLException {
+        Partition partition;
+        int prefill = 0;
+        synchronized (this) {
+            partition = partitions.get(key);
+            if (partition == null) {
+                partition = new Partition(info, maxSize, Math.min(maxIdle, maxSize));
+                partitions.put(key, partition);
+                prefill = Math.min(minSize, maxSize) - 1;
+            }
+
+            // idle connection ?
+            Connection connection;
+            while ((connection = partition.idle.pollFirst()) != null) {
+                if (!connection.isClosed()) {
+                    return connection;
+                }
+                partition.statementCaches.remove(connection);
+                partition.size--;
+            }
+
+            if (partition.size >= partition.maxSize) {
+                throw new SQLException("No more connections available in the pool of the database '" + key.databaseName + "' on port " + key.portNumber + " (max size is " + partition.maxSize + ")");
+            }
+            // reserve the slots, connections are created outside of the lock
+            prefill = Math.max(0, Math.min(prefill, partition.maxSize - partition.size - 1));
+            partition.size += 1 + prefill;
+        }
+
+        Connection connection;
+        try {
+            connection = new JdbcConnection(key.h2Url, partition.info);
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                partition.size -= 1 + prefill;
+            }
+            throw e;
+        }
+
+        // fill the partition with its minimum size
+        for (int i = 0; i < prefill; i++) {
+            Connection idleConnection = null;
+            try {
+                idleConnection = new JdbcConnection(key.h2Url, partition.info);
+            } catch (SQLException e) {
+                // only a prefill, connections will be created on demand
+            }
+            synchronized (this) {
+                if (idleConnection != null && partitions.get(key) == partition) {
+                    partition.idle.addFirst(idleConnection);
+                } else {
+                    partition.size--;
+                    closeQuietly(idleConnection);
+                }
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Gives back a physical connection to the pool. The state of the connection should have been reset.
+     * @param key the key of the partition
+     * @param connection the physical connection
+     */
+    public void release(Key key, Connection connection) {
+        release(key, connection, null);
+    }
+
+    /**
+     * Gives back a physical connection to the pool with the cache of its prepared statements.
+     * @param key the key of the partition
+     * @param connection the physical connection
+     * @param statementCache the cache of the prepared statements of the connection (may be null)
+     */
+    public void release(Key key, Connection connection, StatementCache statementCache) {
+        synchronized (this) {
+            Partition partition = partitions.get(key);
+            if (partition != null && partition.idle.size() < partition.maxIdle) {
+                partition.idle.addFirst(connection);
+                if (statementCache != null) {
+                    partition.statementCaches.put(connection, statementCache);
+                }
+                return;
+            }
+            if (partition != null) {
+                partition.size--;
+            }
+        }
+        closeQuietly(connection);
+    }
+
+    /**
+     * Gets the cache of prepared statements given back with a physical connection.
+     * @param key the key of the partition
+     * @param connection the physical connection returned by borrow
+     * @return the cache or null if the connection has no cache yet
+     */
+    public synchronized StatementCache getStatementCache(Key key, Connection connection) {
+        Partition partition = partitions.get(key);
+        if (partition == null) {
+            return null;
+        }
+        return partition.statementCaches.remove(connection);
+    }
+
+    /**
+     * Close a physical connection that can't be reused.
+     * @param key the key of the partition
+     * @param connection the physical connection
+     */
+    public void discard(Key key, Connection connection) {
+        synchronized (this) {
+            Partition partition = partitions.get(key);
+            if (partition != null) {
+                partition.size--;
+                // the cached statements are closed with the connection
+                partition.statementCaches.remove(connection);
+            }
+        }
+        closeQuietly(connection);
+    }
+
+    /**
+     * Close all the idle connections of the given port number (as the server is going to be stopped).
+     * @param portNumber the port number
+     */
+    public void evict(int portNumber) {
+        evict(portNumber, null);
+    }
+
+    /**
+     * Close all the idle connections of a database (as the database is no longer used).
+     * @param portNumber the port number
+     * @param databaseName the name of the database or null for all the databases of the port
+     */
+    public void evict(int portNumber, String databaseName) {
+        List<Connection> toClose = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<Key, Partition>> iterator = partitions.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, Partition> entry = iterator.next();
+                if (entry.getKey().portNumber == portNumber && (databaseName == null || databaseName.equals(entry.getKey().databaseName))) {
+                    toClose.addAll(entry.getValue().idle);
+                    entry.getValue().statementCaches.clear();
+                    iterator.remove();
+                }
+            }
+        }
+        for (Connection connection : toClose) {
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Ignored, connection is dropped
+        }
+    }
+
+    /**
+     * Key of a partition of the pool.
+     */
+    public static class Key {
+
+        private final int portNumber;
+        private final String databaseName;
+        private final String h2Url;
+        private final String user;
+        private final String password;
+
+        /**
+         * Build a new key.
+         * @param portNumber the port number of the H2 server
+         * @param databaseName the name of the database
+         * @param h2Url the H2 URL used to create physical connections
+         * @param user the user (may be null)
+         * @param password the password (may be null)
+         */
+        public Key(int portNumber, String databaseName, String h2Url, String user, String password) {
+            this.portNumber = portNumber;
+            this.databaseName = databaseName;
+            this.h2Url = h2Url;
+            this.user = user;
+            this.password = password;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(portNumber, databaseName, h2Url, user);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return portNumber == other.portNumber && Objects.equals(databaseName, other.databaseName) && Objects.equals(h2Url, other.h2Url)
+                    && Objects.equals(user, other.user) && Objects.equals(password, other.password);
+        }
+    }
+
+    /**
+     * Connections of a given key.
+     */
+    private static class Partition {
+
+        private final Properties info;
+        private final int maxSize;
+        private final int maxIdle;
+
+        /**
+         * Idle connections (last released first).
+         */
+        private final Deque<Connection> idle = new ArrayDeque<>();
+
+        /**
+         * Caches of the prepared statements of the idle connections (the statements are closed with their connection).
+         */
+        private final Map<Connection, StatementCache> statementCaches = new IdentityHashMap<>();
+
+        /**
+         * Number of physical connections (idle and in use).
+         */
+        private int size;
+
+        public Partition(Properties info, int maxSize, int maxIdle) {
+            this.info = info;
+            this.maxSize = maxSize;
+            this.maxIdle = maxIdle;
+        }
+    }
+
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reference on a connection returned by the driver, kept by the driver while the connection is opened.
+ * It holds the resources of the connection (physical connection, connection on a replica) so they can be released
+ * if the application drops the connection without closing it: the reference is then enqueued once the connection is garbage collected.
+ * A weak reference is used instead of a phantom reference so the connections still reachable can be closed by force.
+ * @author Florent Benoit
+ */
+public class H2ConnectionReference extends WeakReference<H2Connection> {
+
+    private final int portNumber;
+    private final String databaseName;
+
+    /**
+     * In-memory database of the connection (null if the connection is on a local port).
+     */
+    private final MemoryDatabaseEntry memoryDatabase;
+
+    /**
+     * Physical connection.
+     */
+    private final Connection connection;
+
+    /**
+     * Pool of the physical connection (null if the connection is not pooled).
+     */
+    private final H2ConnectionPool pool;
+    private final H2ConnectionPool.Key poolKey;
+
+    /**
+     * Time (System.nanoTime) of the open.
+     */
+    private final long openTime = System.nanoTime();
+
+    /**
+     * Time in nanoseconds after which the connection is closed by force (0 if not limited).
+     */
+    private final long maxHoldTime;
+
+    /**
+     * Stack of the open (null if not captured).
+     */
+    private final Throwable openStack;
+
+    /**
+     * Connection on a replica while the connection is routed to a replica.
+     */
+    private volatile ReplicaSet.ReplicaConnection replicaConnection;
+
+    /**
+     * Limits of the connections of the port and of the database which admitted the connection (null if not limited).
+     */
+    private volatile AdmissionControl portAdmission;
+    private volatile AdmissionControl databaseAdmission;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Build a reference on the given connection.
+     * @param h2Connection the connection returned by the driver
+     * @param queue the queue receiving the reference when the connection is garbage collected
+     * @param portNumber the port number of the database
+     * @param databaseName the name of the database
+     * @param memoryDatabase the in-memory database of the connection (may be null)
+     * @param connection the physical connection
+     * @param pool the pool of the physical connection (may be null)
+     * @param poolKey the key of the physical connection in the pool
+     * @param maxHoldTime the time in nanoseconds after which the connection is closed by force (0 if not limited)
+     * @param openStack the stack of the open (may be null)
+     */
+    public H2ConnectionReference(H2Connection h2Connection, ReferenceQueue<? super H2Connection> queue, int portNumber, String databaseName,
+            MemoryDatabaseEntry memoryDatabase, Connection connection, H2ConnectionPool pool, H2ConnectionPool.Key poolKey, long maxHoldTime,
+            Throwable openStack) {
+        super(h2Connection, queue);
+        this.portNumber = portNumber;
+        this.databaseName = databaseName;
+        this.memoryDatabase = memoryDatabase;
+        this.connection = connection;
+        this.pool = pool;
+        this.poolKey = poolKey;
+        this.maxHoldTime = maxHoldTime;
+        this.openStack = openStack;
+    }
+
+    /**
+     * @return the port number of the database
+     */
+    public int getPortNumber() {
+        return portNumber;
+    }
+
+    /**
+     * @return the name of the database (null if unknown)
+     */
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    /**
+     * @return the in-memory database of the connection or null if the connection is on a local port
+     */
+    public MemoryDatabaseEntry getMemoryDatabase() {
+        return memoryDatabase;
+    }
+
+    /**
+     * @return the stack of the open or null if it has not been captured
+     */
+    public Throwable getOpenStack() {
+        return openStack;
+    }
+
+    /**
+     * @return the time in nanoseconds since the open
+     */
+    public long getHoldTime() {
+        return System.nanoTime() - openTime;
+    }
+
+    /**
+     * @return true if the connection is held longer than its maximum hold time
+     */
+    public boolean isHeldTooLong() {
+        return maxHoldTime > 0 && getHoldTime() > maxHoldTime;
+    }
+
+    /**
+     * Sets the connection on a replica used by the connection.
+     * @param replicaConnection the connection on a replica (null if the connection uses the database)
+     */
+    public void setReplicaConnection(ReplicaSet.ReplicaConnection replicaConnection) {
+        this.replicaConnection = replicaConnection;
+    }
+
+    /**
+     * Sets the limits which admitted the connection, they're released with the connection.
+     * @param portAdmission the limit of the port (may be null)
+     * @param databaseAdmission the limit of the database (may be null)
+     */
+    public void admitted(AdmissionControl portAdmission, AdmissionControl databaseAdmission) {
+        this.portAdmission = portAdmission;
+        this.databaseAdmission = databaseAdmission;
+    }
+
+    /**
+     * Gives back the places of the connection to the limits which admitted it.
+     */
+    public void releaseAdmission() {
+        if (portAdmission != null) {
+            portAdmission.release();
+        }
+        if (databaseAdmission != null) {
+            databaseAdmission.release();
+        }
+    }
+
+    /**
+     * Marks the connection as closed. The reference is cleared and won't be enqueued.
+     * @return false if the connection was already closed
+     */
+    public boolean closed() {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        clear();
+        return true;
+    }
+
+    /**
+     * @return true if the connection has been closed or reclaimed
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Closes the resources of a connection garbage collected without being closed. The physical connection is not reused.
+     * @throws SQLException if the physical connection can't be closed
+     */
+    public void discard() throws SQLException {
+        try {
+            ReplicaSet.ReplicaConnection replica = replicaConnection;
+            if (replica != null) {
+                replicaConnection = null;
+                replica.close();
+            }
+        } finally {
+            if (pool == null) {
+                connection.close();
+            } else {
+                pool.discard(poolKey, connection);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (memoryDatabase != null) {
+            return "connection on the in-memory database '" + memoryDatabase.getName() + "'";
+        }
+        return "connection on the database '" + databaseName + "' of port " + portNumber;
+    }
+
+}
@@ -0,0 +1,475 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+/**
+ * Prepared statement returned by the connections of the driver.
+ * If the statement comes from the statement cache of the connection, closing it gives it back to the cache.
+ * @author Florent Benoit
+ */
+public class H2PreparedStatement extends H2Statement implements PreparedStatement {
+
+    private final PreparedStatement wrappedPreparedStatement;
+
+    /**
+     * SQL of the statement.
+     */
+    private final String sql;
+
+    /**
+     * Cache receiving the statement when it is closed (null if the statement is not cached).
+     */
+    private final StatementCache statementCache;
+
+    /**
+     * Generation of the cache when the statement was taken from the cache or prepared.
+     */
+    private final int cacheGeneration;
+
+    /**
+     * H2 statements are never poolable, the flag is handled by the wrapper.
+     */
+    private boolean poolable = true;
+
+    /**
+     * True if the settings of the statement (limits, timeout, fetch size, ...) have been changed, it can't be cached anymore.
+     */
+    private boolean settingsChanged;
+
+    /**
+     * Build a prepared statement around the given H2 prepared statement.
+     * @param connection the connection of the statement
+     * @param sql the SQL of the statement
+     * @param preparedStatement the statement to wrap
+     * @param queryLog the log receiving the timings (may be null)
+     */
+    public H2PreparedStatement(H2Connection connection, String sql, PreparedStatement preparedStatement, QueryLog queryLog) {
+        this(connection, sql, preparedStatement, queryLog, null, 0);
+    }
+
+    /**
+     * Build a prepared statement around a H2 prepared statement of the given cache.
+     * @param connection the connection of the statement
+     * @param sql the SQL of the statement
+     * @param preparedStatement the statement to wrap
+     * @param queryLog the log receiving the timings (may be null)
+     * @param statementCache the cache receiving the statement when it is closed
+     * @param cacheGeneration the generation of the cache when the statement was taken or prepared
+     */
+    public H2PreparedStatement(H2Connection connection, String sql, PreparedStatement preparedStatement, QueryLog queryLog, StatementCache statementCache, int cacheGeneration) {
+        super(connection, preparedStatement, queryLog);
+        this.wrappedPreparedStatement = preparedStatement;
+        this.sql = sql;
+        this.statementCache = statementCache;
+        this.cacheGeneration = cacheGeneration;
+    }
+
+    /**
+     * @return the SQL of the statement
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Cached statements are given back to the cache instead of being closed (unless they've been marked as not poolable).
+     */
+    @Override
+    public void close() throws SQLException {
+        if (statementCache == null) {
+            super.close();
+            return;
+        }
+        if (markClosed()) {
+            if (poolable && !settingsChanged) {
+                statementCache.put(sql, wrappedPreparedStatement, cacheGeneration);
+            } else {
+                wrappedPreparedStatement.close();
+            }
+        }
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        this.poolable = poolable;
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return poolable;
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        super.setMaxFieldSize(max);
+        settingsChanged = true;
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        super.setMaxRows(max);
+        settingsChanged = true;
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        super.setEscapeProcessing(enable);
+        settingsChanged = true;
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        super.setQueryTimeout(seconds);
+        settingsChanged = true;
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        super.setCursorName(name);
+        settingsChanged = true;
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        super.setFetchDirection(direction);
+        settingsChanged = true;
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        super.setFetchSize(rows);
+        settingsChanged = true;
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        super.closeOnCompletion();
+        settingsChanged = true;
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        startExecution(sql);
+        long startTime = System.nanoTime();
+        try {
+            return executed(sql, startTime, wrappedPreparedStatement.executeQuery());
+        } catch (SQLException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        startExecution(sql);
+        long startTime = System.nanoTime();
+        try {
+            return executed(sql, startTime, wrappedPreparedStatement.executeUpdate());
+        } catch (SQLException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        startExecution(sql);
+        long startTime = System.nanoTime();
+        try {
+            return executed(sql, startTime, wrappedPreparedStatement.execute());
+        } catch (SQLException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        wrappedPreparedStatement.addBatch();
+        addedToBatch(sql);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        wrappedPreparedStatement.setNull(parameterIndex, sqlType);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        wrappedPreparedStatement.setBoolean(parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        wrappedPreparedStatement.setByte(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        wrappedPreparedStatement.setShort(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        wrappedPreparedStatement.setInt(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        wrappedPreparedStatement.setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        wrappedPreparedStatement.setFloat(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        wrappedPreparedStatement.setDouble(parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        wrappedPreparedStatement.setBigDecimal(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        wrappedPreparedStatement.setString(parameterIndex, x);
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        wrappedPreparedStatement.setBytes(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        wrappedPreparedStatement.setDate(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        wrappedPreparedStatement.setTime(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        wrappedPreparedStatement.setTimestamp(parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        wrappedPreparedStatement.setAsciiStream(parameterIndex, x, length);
+    }
+
+    @Override
+    @Deprecated
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        wrappedPreparedStatement.setUnicodeStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        wrappedPreparedStatement.setBinaryStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        wrappedPreparedStatement.clearParameters();
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        wrappedPreparedStatement.setObject(parameterIndex, x, targetSqlType);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        wrappedPreparedStatement.setObject(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
+        wrappedPreparedStatement.setCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        wrappedPreparedStatement.setRef(parameterIndex, x);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        wrappedPreparedStatement.setBlob(parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        wrappedPreparedStatement.setClob(parameterIndex, x);
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        wrappedPreparedStatement.setArray(parameterIndex, x);
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return wrappedPreparedStatement.getMetaData();
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        wrappedPreparedStatement.setDate(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        wrappedPreparedStatement.setTime(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        wrappedPreparedStatement.setTimestamp(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        wrappedPreparedStatement.setNull(parameterIndex, sqlType, typeName);
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        wrappedPreparedStatement.setURL(parameterIndex, x);
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        return wrappedPreparedStatement.getParameterMetaData();
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        wrappedPreparedStatement.setRowId(parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String value) throws SQLException {
+        wrappedPreparedStatement.setNString(parameterIndex, value);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
+        wrappedPreparedStatement.setNCharacterStream(parameterIndex, value, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob value) throws SQLException {
+        wrappedPreparedStatement.setNClob(parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        wrappedPreparedStatement.setClob(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
+        wrappedPreparedStatement.setBlob(parameterIndex, inputStream, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        wrappedPreparedStatement.setNClob(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
+        wrappedPreparedStatement.setSQLXML(parameterIndex, xmlObject);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        wrappedPreparedStatement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        wrappedPreparedStatement.setAsciiStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        wrappedPreparedStatement.setBinaryStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        wrappedPreparedStatement.setCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+        wrappedPreparedStatement.setAsciiStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+        wrappedPreparedStatement.setBinaryStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        wrappedPreparedStatement.setCharacterStream(parameterIndex, reader);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
+        wrappedPreparedStatement.setNCharacterStream(parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader) throws SQLException {
+        wrappedPreparedStatement.setClob(parameterIndex, reader);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
+        wrappedPreparedStatement.setBlob(parameterIndex, inputStream);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+        wrappedPreparedStatement.setNClob(parameterIndex, reader);
+    }
+
+}
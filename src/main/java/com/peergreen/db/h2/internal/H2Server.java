@@ -17,7 +17,13 @@ import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.h2.tools.Server;
 
@@ -38,24 +44,83 @@ public class H2Server {
     private final int portNumber;
 
     /**
-     * Instance of the wrapped server.
+     * Instance of the wrapped server (null if not started or if the server is shared).
      */
-    private Server server;
+    private volatile Server server;
 
     /**
-     * List of Users to add on the instance of the database.
+     * Physical servers shared by the ports (null if this instance has its own server).
+     */
+    private final SharedTcpServers sharedServers;
+
+    /**
+     * Port number of the physical TCP server (-1 if not started).
+     */
+    private volatile int tcpPort = -1;
+
+    /**
+     * List of Users to add on the instance of the database (guarded by this instance until the start).
      */
     private final List<User> users;
 
+    /**
+     * Passwords of the users provisioned since the start of the server, by database and user name.
+     * Read without lock so the connects of users already provisioned don't wait for the provisioning of the others.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, String>> provisionedUsers;
+
     /**
      * Build a new instance of the H2 server.
      * @param baseDir the base directory
      * @param portNumber the port number
      */
     public H2Server(File baseDir, int portNumber) {
+        this(baseDir, portNumber, null);
+    }
+
+    /**
+     * Build a new instance of the H2 server using one of the given shared servers.
+     * @param baseDir the base directory
+     * @param portNumber the logical port number
+     * @param sharedServers the physical servers or null to start a dedicated server
+     */
+    public H2Server(File baseDir, int portNumber, SharedTcpServers sharedServers) {
         this.baseDir = baseDir;
         this.portNumber = portNumber;
+        this.sharedServers = sharedServers;
         this.users = new ArrayList<>();
+        this.provisionedUsers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return the directory of the databases of this server
+     */
+    public File getDatabaseDir() {
+        return getDatabaseDir(baseDir, portNumber);
+    }
+
+    /**
+     * Gets the directory of the databases of a port, the server of the port may not be created.
+     * @param baseDir the base directory
+     * @param portNumber the port number
+     * @return the directory of the databases of the port
+     */
+    public static File getDatabaseDir(File baseDir, int portNumber) {
+        return new File(baseDir.getPath(), "tcp-".concat(String.valueOf(portNumber)));
+    }
+
+    /**
+     * Gets the URL of a database of this server. With a shared server, the databases are in the directory of the logical port.
+     * @param database the name of the database (may be prefixed by a H2 file system like nio:)
+     * @return the H2 TCP URL of the database
+     */
+    public String getUrl(String database) {
+        if (sharedServers != null) {
+            // file system prefix stays in front of the path
+            int prefixEnd = database.lastIndexOf(':') + 1;
+            return "jdbc:h2:tcp://localhost:" + tcpPort + "/" + database.substring(0, prefixEnd) + getDatabaseDir().getName() + "/" + database.substring(prefixEnd);
+        }
+        return "jdbc:h2:tcp://localhost:" + tcpPort + "/" + database;
     }
 
     /**
@@ -64,6 +129,22 @@ public class H2Server {
      * @throws SQLException if H2 server cannot be started
      */
     public void start() throws H2ServerException, SQLException {
+        // users are inserted once the monitor is released
+        provisionPendingUsers(startServer());
+    }
+
+    /**
+     * Starts the physical server and takes the users added before the start.
+     * @return the users to insert
+     * @throws H2ServerException if H2 server cannot be started
+     * @throws SQLException if H2 server cannot be started
+     */
+    private synchronized List<User> startServer() throws H2ServerException, SQLException {
+        if (sharedServers != null) {
+            tcpPort = sharedServers.acquire(portNumber);
+            return takePendingUsers();
+        }
+
         // Build list of arguments
         List<String> argList = new ArrayList<>();
 
@@ -73,7 +154,7 @@ public class H2Server {
 
         // Specify base directory
         argList.add("-baseDir");
-        argList.add(new File(baseDir.getPath(), "tcp-".concat(String.valueOf(portNumber))).getPath());
+        argList.add(getDatabaseDir().getPath());
 
         // Convert args into array
         String[] args = argList.toArray(new String[argList.size()]);
@@ -86,34 +167,136 @@ public class H2Server {
         }
 
         server.start();
-        if (users.size() > 0) {
-            for (User user : users) {
-                insertUser(user.getUsername(), user.getPassword(), user.getDatabase());
+        tcpPort = portNumber;
+        return takePendingUsers();
+    }
+
+    /**
+     * Takes the users added before the start.
+     * @return the users to insert
+     */
+    private synchronized List<User> takePendingUsers() {
+        List<User> pendingUsers = new ArrayList<>(users);
+        users.clear();
+        return pendingUsers;
+    }
+
+    /**
+     * Insert the users added before the start, with one session by database.
+     * @param pendingUsers the users added before the start
+     * @throws SQLException if the users cannot be added
+     */
+    private void provisionPendingUsers(List<User> pendingUsers) throws SQLException {
+        Map<String, List<User>> usersByDatabase = new LinkedHashMap<>();
+        for (User user : pendingUsers) {
+            List<User> databaseUsers = usersByDatabase.get(user.getDatabase());
+            if (databaseUsers == null) {
+                databaseUsers = new ArrayList<>();
+                usersByDatabase.put(user.getDatabase(), databaseUsers);
             }
+            databaseUsers.add(user);
+        }
+        for (Map.Entry<String, List<User>> entry : usersByDatabase.entrySet()) {
+            insertUsers(entry.getKey(), entry.getValue());
         }
+    }
 
+    /**
+     * Insert the given users for the following database in a single session.
+     * All the users are sent as one SQL script in a single round-trip and committed together.
+     * Users already provisioned with the same password since the start of the server are skipped,
+     * existing users get the new password and the admin right.
+     * No lock is held: the script is idempotent so concurrent inserts of the same user are harmless.
+     * @param database the database for which add the given users
+     * @param databaseUsers the users to add
+     * @throws SQLException if the users cannot be added
+     */
+    protected void insertUsers(String database, List<User> databaseUsers) throws SQLException {
+        ConcurrentMap<String, String> provisioned = provisionedUsers.get(database);
+        if (provisioned == null) {
+            ConcurrentMap<String, String> newProvisioned = new ConcurrentHashMap<>();
+            provisioned = provisionedUsers.putIfAbsent(database, newProvisioned);
+            if (provisioned == null) {
+                provisioned = newProvisioned;
+            }
+        }
+
+        // only the new users or the users with another password
+        Map<String, String> pending = new LinkedHashMap<>();
+        for (User user : databaseUsers) {
+            String name = user.getUsername().toUpperCase(Locale.ENGLISH);
+            String password = user.getPassword();
+            if (password == null) {
+                password = "";
+            }
+            if (!password.equals(provisioned.get(name))) {
+                pending.put(name, password);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        StringBuilder script = new StringBuilder();
+        for (Map.Entry<String, String> entry : pending.entrySet()) {
+            String name = quoteIdentifier(entry.getKey());
+            String password = quoteLiteral(entry.getValue());
+            script.append("CREATE USER IF NOT EXISTS ").append(name).append(" PASSWORD ").append(password).append(" ADMIN;");
+            script.append("ALTER USER ").append(name).append(" SET PASSWORD ").append(password).append(';');
+            script.append("ALTER USER ").append(name).append(" ADMIN TRUE;");
+        }
+        try (Connection connection = DriverManager.getConnection(getUrl(database), "", "")) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(script.toString());
+            }
+            connection.commit();
+        }
+        provisioned.putAll(pending);
     }
 
     /**
-     * Insert the given user for the following database
-     * @param user the user
-     * @param password the password
-     * @param database the database for which add the given user
-     * @throws SQLException if the user cannot be added
+     * Closes the given database and rewrites its file without the free pages, the pages of each table being stored together.
+     * The sessions still opened on the database are closed by H2.
+     * @param database the database to compact
+     * @throws SQLException if the database can't be compacted
      */
-    protected void insertUser(String user, String password, String database) throws SQLException {
-        String updatedPassword;
-        if (password == null) {
-            updatedPassword = "";
-        } else {
-            updatedPassword = password;
+    public void compact(String database) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(getUrl(database), "", ""); Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN DEFRAG");
         }
-        try (Connection connection = DriverManager.getConnection("jdbc:h2:tcp://localhost:" + portNumber + "/" + database, "", ""); Statement statement = connection.createStatement()) {
-            statement.execute("DROP USER " + user + " IF EXISTS");
-            statement.execute("Create USER " + user + " PASSWORD '" + updatedPassword + "' ADMIN");
+    }
+
+    /**
+     * Sets the maximum number of rows of a result kept in memory by the given database, the other rows are buffered on disk.
+     * The setting applies to all the sessions of the database and is stored in the database.
+     * @param database the database
+     * @param rows the maximum number of rows
+     * @throws SQLException if the setting can't be changed
+     */
+    public void setMaxMemoryRows(String database, int rows) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(getUrl(database), "", ""); Statement statement = connection.createStatement()) {
+            statement.execute("SET MAX_MEMORY_ROWS " + rows);
         }
     }
 
+    /**
+     * Quote the given identifier (H2 user names are case insensitive and stored in upper case).
+     * @param identifier the identifier
+     * @return the quoted identifier
+     */
+    protected static String quoteIdentifier(String identifier) {
+        return "\"".concat(identifier.replace("\"", "\"\"")).concat("\"");
+    }
+
+    /**
+     * Quote the given string literal.
+     * @param value the value
+     * @return the quoted literal
+     */
+    protected static String quoteLiteral(String value) {
+        return "'".concat(value.replace("'", "''")).concat("'");
+    }
 
     /**
      * Adds the given user for the following database. Adds can be later added
@@ -123,17 +306,45 @@ public class H2Server {
      * @throws SQLException if the user cannot be added
      */
     public void addUser(String user, String password, String database) throws SQLException {
-        if (server != null) {
-            insertUser(user, password, database);
-        } else {
-            users.add(new User(user, password, database));
+        User newUser = new User(user, password, database);
+        if (tcpPort == -1) {
+            synchronized (this) {
+                // kept for the start, unless the server has been started in the meantime
+                if (tcpPort == -1) {
+                    users.add(newUser);
+                    return;
+                }
+            }
+        }
+        insertUsers(database, Collections.singletonList(newUser));
+    }
+
+    /**
+     * Checks that the server accepts connections (a socket is opened on the TCP port).
+     * @return true if the server is started and accepts connections
+     */
+    public boolean isRunning() {
+        Server currentServer = server;
+        if (currentServer != null) {
+            return currentServer.isRunning(true);
+        }
+        if (sharedServers != null && tcpPort != -1) {
+            return sharedServers.isRunning(portNumber);
         }
+        return false;
     }
 
     /**
      * Stop the instance of the server.
      */
-    public void stop() {
-        server.stop();
+    public synchronized void stop() {
+        // may be not yet started
+        if (server != null) {
+            server.stop();
+            server = null;
+        } else if (sharedServers != null && tcpPort != -1) {
+            sharedServers.release(portNumber);
+        }
+        tcpPort = -1;
     }
 }
@@ -0,0 +1,527 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+/**
+ * Statement returned by the connections of the driver. It delegates all the calls to the H2 statement,
+ * measures the time of the executions (including the iteration of the result sets) and notifies the connection of the executed SQL.
+ * @author Florent Benoit
+ */
+public class H2Statement implements Statement {
+
+    private final H2Connection connection;
+    private final Statement wrappedStatement;
+
+    /**
+     * Receives the timings of the executions (null if the statements are not measured).
+     */
+    private final QueryLog queryLog;
+
+    private boolean closed;
+
+    /**
+     * Result set of the last execution (its timing is recorded when it is closed or fully read).
+     */
+    private H2ResultSet currentResultSet;
+
+    /**
+     * SQL and start time of an execute() call whose result set has not yet been retrieved.
+     */
+    private String pendingSql;
+    private long pendingTime;
+
+    /**
+     * SQL of the batch (first SQL and number of SQL).
+     */
+    private String batchSql;
+    private int batchSize;
+
+    /**
+     * Build a statement around the given H2 statement.
+     * @param connection the connection of the statement
+     * @param statement the statement to wrap
+     * @param queryLog the log receiving the timings (may be null)
+     */
+    public H2Statement(H2Connection connection, Statement statement, QueryLog queryLog) {
+        this.connection = connection;
+        this.wrappedStatement = statement;
+        this.queryLog = queryLog;
+    }
+
+    /**
+     * Checks that the statement is still open, records the timing of the previous execution and notifies the connection.
+     * @param sql the SQL to execute (null for a batch, the connection has been notified when the statements were added)
+     * @throws SQLException if the statement is closed
+     */
+    protected void startExecution(String sql) throws SQLException {
+        if (closed) {
+            throw new SQLException("The statement is closed");
+        }
+        completeExecution();
+        if (sql != null) {
+            connection.executing(sql);
+        }
+    }
+
+    /**
+     * Record the timing of the previous execution if it is not yet done.
+     */
+    protected void completeExecution() {
+        if (currentResultSet != null) {
+            currentResultSet.complete();
+            currentResultSet = null;
+        }
+        if (pendingSql != null) {
+            record(pendingSql, System.nanoTime() - pendingTime, 0);
+            pendingSql = null;
+        }
+    }
+
+    /**
+     * Notifies the connection that an execution has failed, the session may have been closed by the server.
+     * @param e the failure of the execution
+     * @return the given failure
+     */
+    protected SQLException failed(SQLException e) {
+        connection.failed();
+        return e;
+    }
+
+    /**
+     * Record the timing of an execution if the statements are measured.
+     */
+    private void record(String sql, long nanos, long rows) {
+        if (queryLog != null) {
+            queryLog.record(sql, nanos, rows);
+        }
+    }
+
+    /**
+     * Mark the statement as closed, the connection forgets it.
+     * @return false if the statement was already closed
+     */
+    protected boolean markClosed() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        completeExecution();
+        connection.untrack(this);
+        return true;
+    }
+
+    /**
+     * Wrap the result set of a query. The timing is recorded when the result set is closed or fully read.
+     * @param sql the SQL of the query
+     * @param startTime the start time of the execution
+     * @param resultSet the result set to wrap
+     * @return the wrapped result set
+     */
+    protected ResultSet executed(String sql, long startTime, ResultSet resultSet) {
+        currentResultSet = new H2ResultSet(this, resultSet, queryLog, sql, startTime);
+        return currentResultSet;
+    }
+
+    /**
+     * Record the timing of an update.
+     * @param sql the SQL of the update
+     * @param startTime the start time of the execution
+     * @param rows the number of updated rows
+     * @return the number of updated rows
+     */
+    protected int executed(String sql, long startTime, int rows) {
+        record(sql, System.nanoTime() - startTime, rows);
+        return rows;
+    }
+
+    /**
+     * Record the timing of an execute() call.
+     * @param sql the SQL of the statement
+     * @param startTime the start time of the execution
+     * @param result true if the statement returned a result set
+     * @return the result of the execution
+     * @throws SQLException if the update count can't be retrieved
+     */
+    protected boolean executed(String sql, long startTime, boolean result) throws SQLException {
+        if (result) {
+            // timing is recorded with the result set
+            pendingSql = sql;
+            pendingTime = startTime;
+        } else {
+            executed(sql, startTime, wrappedStatement.getUpdateCount());
+        }
+        return result;
+    }
+
+    /**
+     * @return the label of the current batch in the logs
+     */
+    protected String getBatchSql() {
+        if (batchSize > 1) {
+            return batchSql + " (+" + (batchSize - 1) + " more)";
+        }
+        return batchSql;
+    }
+
+    /**
+     * Record the timing of a batch.
+     * @param startTime the start time of the execution
+     * @param counts the update counts
+     * @return the update counts
+     */
+    protected int[] executed(long startTime, int[] counts) {
+        long rows = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                rows += count;
+            }
+        }
+        record("BATCH " + getBatchSql(), System.nanoTime() - startTime, rows);
+        return counts;
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        startExecution(sql);
+        long startTime = System.nanoTime();
+        try {
+            return executed(sql, startTime, wrappedStatement.executeQuery(sql));
+        } catch (SQLException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        startExecution(sql);
+        long startTime = System.nanoTime();
+        try {
+            return executed(sql, startTime, wrappedStatement.executeUpdate(sql));
+        } catch (SQLException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        startExecution(sql);
+        long startTime = System.nanoTime();
+        try {
+            return executed(sql, startTime, wrappedStatement.executeUpdate(sql, autoGeneratedKeys));
+        } catch (SQLException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        startExecution(sql);
+        long startTime = System.nanoTime();
+        try {
+            return executed(sql, startTime, wrappedStatement.executeUpdate(sql, columnIndexes));
+        } catch (SQLException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        startExecution(sql);
+        long startTime = System.nanoTime();
+        try {
+            return executed(sql, startTime, wrappedStatement.executeUpdate(sql, columnNames));
+        } catch (SQLException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        startExecution(sql);
+        long startTime = System.nanoTime();
+        try {
+            return executed(sql, startTime, wrappedStatement.execute(sql));
+        } catch (SQLException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        startExecution(sql);
+        long startTime = System.nanoTime();
+        try {
+            return executed(sql, startTime, wrappedStatement.execute(sql, autoGeneratedKeys));
+        } catch (SQLException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        startExecution(sql);
+        long startTime = System.nanoTime();
+        try {
+            return executed(sql, startTime, wrappedStatement.execute(sql, columnIndexes));
+        } catch (SQLException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        startExecution(sql);
+        long startTime = System.nanoTime();
+        try {
+            return executed(sql, startTime, wrappedStatement.execute(sql, columnNames));
+        } catch (SQLException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        if (pendingSql != null) {
+            ResultSet resultSet = wrappedStatement.getResultSet();
+            String sql = pendingSql;
+            pendingSql = null;
+            if (resultSet == null) {
+                return null;
+            }
+            return executed(sql, pendingTime, resultSet);
+        }
+        if (currentResultSet != null) {
+            return currentResultSet;
+        }
+        return wrappedStatement.getResultSet();
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        wrappedStatement.addBatch(sql);
+        addedToBatch(sql);
+    }
+
+    /**
+     * Counts the statements added to the batch.
+     * @param sql the SQL added to the batch
+     */
+    protected void addedToBatch(String sql) {
+        connection.executing(sql);
+        if (batchSize == 0) {
+            batchSql = sql;
+        }
+        batchSize++;
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        wrappedStatement.clearBatch();
+        batchSql = null;
+        batchSize = 0;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        startExecution(null);
+        long startTime = System.nanoTime();
+        try {
+            return executed(startTime, wrappedStatement.executeBatch());
+        } catch (SQLException e) {
+            throw failed(e);
+        } finally {
+            batchSql = null;
+            batchSize = 0;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (markClosed()) {
+            wrappedStatement.close();
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connection;
+    }
+
+    /**
+     * @return the connection of the statement
+     */
+    protected H2Connection getConnectionWrapper() {
+        return connection;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        if (iface.isInstance(wrappedStatement)) {
+            return iface.cast(wrappedStatement);
+        }
+        throw new SQLException("The statement is not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || iface.isInstance(wrappedStatement);
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return wrappedStatement.getMaxFieldSize();
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        wrappedStatement.setMaxFieldSize(max);
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return wrappedStatement.getMaxRows();
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        wrappedStatement.setMaxRows(max);
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        wrappedStatement.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return wrappedStatement.getQueryTimeout();
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        wrappedStatement.setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        wrappedStatement.cancel();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return wrappedStatement.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        wrappedStatement.clearWarnings();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        wrappedStatement.setCursorName(name);
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return wrappedStatement.getUpdateCount();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        // the timing of the current result is recorded, the next result set is wrapped by getResultSet
+        completeExecution();
+        return wrappedStatement.getMoreResults();
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        wrappedStatement.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return wrappedStatement.getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        wrappedStatement.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return wrappedStatement.getFetchSize();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return wrappedStatement.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return wrappedStatement.getResultSetType();
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        // the timing of the current result is recorded, the next result set is wrapped by getResultSet
+        completeExecution();
+        return wrappedStatement.getMoreResults(current);
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return wrappedStatement.getGeneratedKeys();
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return wrappedStatement.getResultSetHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed || wrappedStatement.isClosed();
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        wrappedStatement.setPoolable(poolable);
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return wrappedStatement.isPoolable();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        wrappedStatement.closeOnCompletion();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return wrappedStatement.isCloseOnCompletion();
+    }
+
+}
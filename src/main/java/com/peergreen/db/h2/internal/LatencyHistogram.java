@@ -0,0 +1,77 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with power of two buckets: the bucket i counts latencies less than 2^i microseconds (and at least 2^(i-1)).
+ * The last bucket counts all the latencies of 2^22 microseconds and more. Recording a value doesn't allocate.
+ * @author Florent Benoit
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of buckets.
+     */
+    private static final int BUCKETS = 24;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Record a latency.
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+    }
+
+    /**
+     * @return the values of the buckets
+     */
+    public long[] snapshot() {
+        long[] values = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            values[i] = buckets.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Gets an approximation of a percentile of the given histogram values: the upper bound of the bucket containing the percentile.
+     * @param values the values of the buckets
+     * @param percentile the percentile (between 0 and 100)
+     * @return the upper bound in microseconds of the bucket of the percentile (0 if there are no values)
+     */
+    public static long percentile(long[] values, double percentile) {
+        long count = 0;
+        for (long value : values) {
+            count += value;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < values.length; i++) {
+            seen += values[i];
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return 1L << (values.length - 1);
+    }
+
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.h2.jdbc.JdbcConnection;
+import org.h2.store.fs.FileUtils;
+
+/**
+ * State of an in-memory database handled by the driver (jdbc:pg+h2:mem: URLs).
+ * The database is created by the first connection and kept alive by a connection of the driver while it has references.
+ * When the last reference is released, the entry is retired and the database is dropped. Connectors of a retired entry wait until
+ * the database is dropped and create a new one.
+ * @author Florent Benoit
+ */
+public class MemoryDatabaseEntry {
+
+    /**
+     * Value of the references when the entry can't be used anymore.
+     */
+    private static final int RETIRED = -1;
+
+    /**
+     * Suffixes of the files of a database stored on the in-memory file system.
+     */
+    private static final String[] FILE_SUFFIXES = {".h2.db", ".lock.db", ".trace.db"};
+
+    private final String name;
+
+    /**
+     * Maximum size of the database in bytes (0 if not limited).
+     */
+    private final long maxSize;
+
+    /**
+     * Number of connections using the database. The creator of the entry owns the first reference.
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * Connections opened on the database (closed by force if they're still opened when the driver is stopped).
+     */
+    private final Set<H2ConnectionReference> connections = Collections.newSetFromMap(new ConcurrentHashMap<H2ConnectionReference, Boolean>());
+
+    /**
+     * Passwords of the users provisioned on the database, by user name.
+     */
+    private final Map<String, String> provisionedUsers = new HashMap<>();
+
+    private final CountDownLatch created = new CountDownLatch(1);
+
+    private final CountDownLatch dropped = new CountDownLatch(1);
+
+    private volatile Throwable createFailure;
+
+    /**
+     * Rows of a result kept in memory, applied when the database is created (0 if the H2 value is kept).
+     */
+    private final int resultMemoryRows;
+
+    /**
+     * Connection of the driver keeping the database alive.
+     */
+    private Connection keeper;
+
+    /**
+     * Build an entry for the given in-memory database.
+     * @param name the name of the database
+     * @param maxSize the maximum size of the database in kilobytes (0 if not limited)
+     * @param resultMemoryRows the rows of a result kept in memory by the database (0 to keep the H2 value)
+     */
+    public MemoryDatabaseEntry(String name, long maxSize, int resultMemoryRows) {
+        this.name = name;
+        this.maxSize = maxSize * 1024;
+        this.resultMemoryRows = resultMemoryRows;
+    }
+
+    /**
+     * @return the name of the database
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the H2 URL of the database (without settings)
+     */
+    public String getUrl() {
+        if (maxSize > 0) {
+            // stored on the in-memory file system, the writes making the files larger than the maximum size fail
+            return "jdbc:h2:".concat(SizeLimitedFilePath.getPath("memFS:".concat(name), maxSize));
+        }
+        return "jdbc:h2:mem:".concat(name);
+    }
+
+    /**
+     * Creates the database. The user of the given properties is the administrator of the new database.
+     * @param h2Settings the H2 settings of the URL
+     * @param info the connection properties
+     * @throws SQLException if the database can't be created
+     */
+    public synchronized void create(String h2Settings, Properties info) throws SQLException {
+        keeper = new JdbcConnection(getUrl().concat(h2Settings), info);
+        if (resultMemoryRows > 0) {
+            // global to the database, set once by its creator
+            try (Statement statement = keeper.createStatement()) {
+                statement.execute("SET MAX_MEMORY_ROWS " + resultMemoryRows);
+            } catch (SQLException e) {
+                keeper.close();
+                keeper = null;
+                throw e;
+            }
+        }
+        String user = info.getProperty("user");
+        if (user != null) {
+            String password = info.getProperty("password");
+            provisionedUsers.put(user.toUpperCase(Locale.ENGLISH), password == null ? "" : password);
+        }
+    }
+
+    /**
+     * Adds the given user on the database (nothing is done if the user has already been added with the same password).
+     * @param user the user
+     * @param password the password
+     * @throws SQLException if the user cannot be added
+     */
+    public synchronized void addUser(String user, String password) throws SQLException {
+        String userName = user.toUpperCase(Locale.ENGLISH);
+        if (password == null) {
+            password = "";
+        }
+        if (password.equals(provisionedUsers.get(userName))) {
+            return;
+        }
+        String quotedName = H2Server.quoteIdentifier(userName);
+        String quotedPassword = H2Server.quoteLiteral(password);
+        try (Statement statement = keeper.createStatement()) {
+            statement.execute("CREATE USER IF NOT EXISTS " + quotedName + " PASSWORD " + quotedPassword + " ADMIN;"
+                    + "ALTER USER " + quotedName + " SET PASSWORD " + quotedPassword + ";"
+                    + "ALTER USER " + quotedName + " ADMIN TRUE;");
+        }
+        provisionedUsers.put(userName, password);
+    }
+
+    /**
+     * Checks the rows of a result kept in memory asked by a connection.
+     * @param rows the rows asked by the connection (0 if the connection doesn't ask for a value)
+     * @throws SQLException if the database has been created with another value
+     */
+    public void checkResultMemoryRows(int rows) throws SQLException {
+        if (rows > 0 && rows != resultMemoryRows) {
+            throw new SQLException("The in-memory database '" + name + "' has been created with " + DriverSettings.RESULT_MEMORY_ROWS + "="
+                    + resultMemoryRows + ", " + rows + " asked");
+        }
+    }
+
+    /**
+     * Drops the database, the sessions still opened on it are closed.
+     * @throws SQLException if the database can't be dropped
+     */
+    public synchronized void drop() throws SQLException {
+        if (keeper == null) {
+            return;
+        }
+        try {
+            try (Statement statement = keeper.createStatement()) {
+                statement.execute("SHUTDOWN");
+            }
+        } finally {
+            keeper.close();
+            keeper = null;
+            if (maxSize > 0) {
+                for (String suffix : FILE_SUFFIXES) {
+                    FileUtils.delete("memFS:".concat(name).concat(suffix));
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps a connection opened on the database.
+     * @param connection the opened connection
+     */
+    public void opened(H2ConnectionReference connection) {
+        connections.add(connection);
+    }
+
+    /**
+     * Forgets a connection closed on the database.
+     * @param connection the closed connection
+     */
+    public void closed(H2ConnectionReference connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * @return the connections currently opened on the database
+     */
+    public List<H2ConnectionReference> getConnections() {
+        return new ArrayList<>(connections);
+    }
+
+    /**
+     * Adds a reference on this entry.
+     * @return false if the entry has been retired, the caller should wait for the drop and use a new entry
+     */
+    public boolean acquire() {
+        for (;;) {
+            int current = references.get();
+            if (current == RETIRED) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes a reference on this entry.
+     * @return true if it was the last reference, in that case the caller should retire the entry and drop the database
+     */
+    public boolean release() {
+        for (;;) {
+            int current = references.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current - 1)) {
+                return current == 1;
+            }
+        }
+    }
+
+    /**
+     * Retires the entry if it has no references.
+     * @return true if the entry has been retired, in that case the caller should drop the database
+     */
+    public boolean retire() {
+        return references.compareAndSet(0, RETIRED);
+    }
+
+    /**
+     * Notify that the database has been created.
+     */
+    public void createSucceeded() {
+        created.countDown();
+    }
+
+    /**
+     * Notify that the database can't be created. The entry is retired.
+     * @param e the cause of the failure
+     */
+    public void createFailed(Throwable e) {
+        this.createFailure = e;
+        references.set(RETIRED);
+        created.countDown();
+        dropped.countDown();
+    }
+
+    /**
+     * Notify that the database has been dropped.
+     */
+    public void dropCompleted() {
+        dropped.countDown();
+    }
+
+    /**
+     * Wait until the database is created.
+     * @throws SQLException if the database can't be created or if the thread is interrupted
+     */
+    public void awaitCreated() throws SQLException {
+        try {
+            created.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the creation of the in-memory database " + name, e);
+        }
+        if (createFailure != null) {
+            throw new SQLException("Unable to create the in-memory database " + name, createFailure);
+        }
+    }
+
+    /**
+     * Wait until the database is dropped.
+     * @throws SQLException if the thread is interrupted
+     */
+    public void awaitDropped() throws SQLException {
+        try {
+            dropped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the drop of the in-memory database " + name, e);
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.peergreen.db.h2.PortStatistics;
+
+/**
+ * Counters of a port. They are kept across the restarts of the server of the port.
+ * Counters are atomic and don't allocate so that they can stay enabled on the connect path.
+ * @author Florent Benoit
+ */
+public class PortMetrics {
+
+    private final int portNumber;
+
+    private volatile boolean serverUp;
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger peakConnections = new AtomicInteger();
+
+    private final LatencyHistogram connectLatencies = new LatencyHistogram();
+
+    private final AtomicLong serverStarts = new AtomicLong();
+    private final AtomicLong serverStartTime = new AtomicLong();
+    private final AtomicLong serverStops = new AtomicLong();
+    private final AtomicLong serverStopTime = new AtomicLong();
+
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+
+    private final AtomicInteger queuedConnects = new AtomicInteger();
+    private final AtomicInteger peakQueuedConnects = new AtomicInteger();
+    private final AtomicLong admissionWaits = new AtomicLong();
+    private final AtomicLong admissionWaitTime = new AtomicLong();
+    private final AtomicLong admissionRejections = new AtomicLong();
+
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong compactionTime = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+
+    public PortMetrics(int portNumber) {
+        this.portNumber = portNumber;
+    }
+
+    /**
+     * A connection has been opened.
+     * @param startTime value of System.nanoTime() when the connect started
+     */
+    public void connected(long startTime) {
+        connectLatencies.record(System.nanoTime() - startTime);
+
+        int open = openConnections.incrementAndGet();
+        int peak;
+        while (open > (peak = peakConnections.get())) {
+            if (peakConnections.compareAndSet(peak, open)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * A connection has been closed.
+     */
+    public void closed() {
+        openConnections.decrementAndGet();
+    }
+
+    /**
+     * The connect had to wait for the start or the stop of the server.
+     * @param startTime value of System.nanoTime() when the wait started
+     */
+    public void waited(long startTime) {
+        waits.incrementAndGet();
+        waitTime.addAndGet(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+    }
+
+    /**
+     * The server has been started.
+     * @param startTime value of System.nanoTime() when the start began
+     */
+    public void serverStarted(long startTime) {
+        serverStarts.incrementAndGet();
+        serverStartTime.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        serverUp = true;
+    }
+
+    /**
+     * The server has been stopped.
+     * @param startTime value of System.nanoTime() when the stop began
+     */
+    public void serverStopped(long startTime) {
+        serverStops.incrementAndGet();
+        serverStopTime.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        serverUp = false;
+    }
+
+    /**
+     * A connect is waiting for the limit of connections of the port or of a database.
+     */
+    public void queued() {
+        int queued = queuedConnects.incrementAndGet();
+        int peak;
+        while (queued > (peak = peakQueuedConnects.get())) {
+            if (peakQueuedConnects.compareAndSet(peak, queued)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * A connect has stopped waiting for the limit of connections (admitted or not).
+     * @param startTime value of System.nanoTime() when the wait started
+     */
+    public void dequeued(long startTime) {
+        queuedConnects.decrementAndGet();
+        admissionWaits.incrementAndGet();
+        admissionWaitTime.addAndGet(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+    }
+
+    /**
+     * A connect has failed because of the limit of connections (queue full or timeout).
+     */
+    public void admissionRejected() {
+        admissionRejections.incrementAndGet();
+    }
+
+    /**
+     * A database has been compacted.
+     * @param startTime value of System.nanoTime() when the compaction started
+     * @param reclaimed the number of bytes removed from the database file
+     */
+    public void compacted(long startTime, long reclaimed) {
+        compactions.incrementAndGet();
+        compactionTime.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        reclaimedBytes.addAndGet(reclaimed);
+    }
+
+    /**
+     * @return true if the server is started
+     */
+    public boolean isServerUp() {
+        return serverUp;
+    }
+
+    /**
+     * @return the number of opened connections
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * @return a snapshot of the counters
+     */
+    public PortStatistics snapshot() {
+        long[] histogram = connectLatencies.snapshot();
+        long connects = 0;
+        for (long value : histogram) {
+            connects += value;
+        }
+        return new PortStatistics(portNumber, serverUp, openConnections.get(), peakConnections.get(), connects, histogram, serverStarts.get(), serverStartTime.get(),
+                serverStops.get(), serverStopTime.get(), waits.get(), waitTime.get(),
+                compactions.get(), compactionTime.get(), reclaimedBytes.get(), queuedConnects.get(), peakQueuedConnects.get(), admissionWaits.get(),
+                admissionWaitTime.get(), admissionRejections.get());
+    }
+
+}
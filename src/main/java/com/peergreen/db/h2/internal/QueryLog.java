@@ -0,0 +1,75 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives the timings of the statements executed on a connection.
+ * Statements slower than the threshold are logged with the com.peergreen.db.h2.slowquery logger and,
+ * if enabled, the timings are aggregated by SQL in the driver statistics.
+ * @author Florent Benoit
+ */
+public class QueryLog {
+
+    private static final Logger SLOW_QUERY_LOGGER = Logger.getLogger("com.peergreen.db.h2.slowquery");
+
+    private final int portNumber;
+    private final String databaseName;
+
+    /**
+     * Threshold in nanoseconds (negative if slow queries are not logged).
+     */
+    private final long threshold;
+
+    /**
+     * Statistics receiving the timings or null if disabled.
+     */
+    private final DriverStatistics statistics;
+
+    /**
+     * Build a log for the connections of the given database.
+     * @param portNumber the port number of the database
+     * @param databaseName the name of the database
+     * @param thresholdMillis statements taking more milliseconds are logged (negative to disable the log)
+     * @param statistics the statistics receiving the timings (null to disable them)
+     */
+    public QueryLog(int portNumber, String databaseName, long thresholdMillis, DriverStatistics statistics) {
+        this.portNumber = portNumber;
+        this.databaseName = databaseName;
+        if (thresholdMillis < 0) {
+            this.threshold = -1;
+        } else {
+            this.threshold = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        }
+        this.statistics = statistics;
+    }
+
+    /**
+     * Record the execution of a statement.
+     * @param sql the SQL text
+     * @param nanos the time of the execution in nanoseconds (including the iteration of the result set)
+     * @param rows the number of rows read or updated
+     */
+    public void record(String sql, long nanos, long rows) {
+        if (threshold >= 0 && nanos >= threshold && SLOW_QUERY_LOGGER.isLoggable(Level.INFO)) {
+            SLOW_QUERY_LOGGER.log(Level.INFO, "Slow query ({0} ms, {1} rows) on port {2} database {3}: {4}",
+                    new Object[] {TimeUnit.NANOSECONDS.toMillis(nanos), rows, String.valueOf(portNumber), databaseName, sql});
+        }
+        if (statistics != null) {
+            statistics.recordQuery(portNumber, databaseName, sql, nanos, rows);
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.peergreen.db.h2.QueryStatistics;
+
+/**
+ * Counters of a SQL statement.
+ * @author Florent Benoit
+ */
+public class QueryMetrics {
+
+    private final int portNumber;
+    private final String databaseName;
+    private final String sql;
+
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Time (System.nanoTime) of the last execution, used to remove the least recently used statements.
+     */
+    private volatile long lastUsed = System.nanoTime();
+
+    public QueryMetrics(int portNumber, String databaseName, String sql) {
+        this.portNumber = portNumber;
+        this.databaseName = databaseName;
+        this.sql = sql;
+    }
+
+    /**
+     * Record an execution.
+     * @param nanos the time of the execution in nanoseconds
+     * @param rowCount the number of rows read or updated
+     */
+    public void record(long nanos, long rowCount) {
+        lastUsed = System.nanoTime();
+        latencies.record(nanos);
+        totalTime.addAndGet(TimeUnit.NANOSECONDS.toMicros(nanos));
+        if (rowCount > 0) {
+            rows.addAndGet(rowCount);
+        }
+    }
+
+    /**
+     * @return the time (System.nanoTime) of the last execution
+     */
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * @return a snapshot of the counters
+     */
+    public QueryStatistics snapshot() {
+        long[] histogram = latencies.snapshot();
+        long executions = 0;
+        for (long value : histogram) {
+            executions += value;
+        }
+        return new QueryStatistics(portNumber, databaseName, sql, executions, totalTime.get(), rows.get(), LatencyHistogram.percentile(histogram, 50),
+                LatencyHistogram.percentile(histogram, 99));
+    }
+
+}
@@ -0,0 +1,307 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.h2.jdbc.JdbcConnection;
+import org.h2.store.fs.FileUtils;
+
+/**
+ * Read-only replicas of a database of a port, refreshed from consistent snapshots (BACKUP TO) of the database.
+ * Each replica is a copy of the snapshot opened in read-only mode in the JVM of the driver (no TCP server), so the readers
+ * don't share the database of the writers. A refresh creates a new generation of each replica: new connections use the new generation
+ * and the files of the previous one are deleted with its last connection.
+ * @author Florent Benoit
+ */
+public class ReplicaSet {
+
+    private static final Logger LOGGER = Logger.getLogger(ReplicaSet.class.getName());
+
+    private final String databaseName;
+
+    /**
+     * Directory of the generations of the replicas.
+     */
+    private final File replicasDir;
+
+    /**
+     * Current generation of each replica (null until the first snapshot).
+     */
+    private final Generation[] replicas;
+
+    /**
+     * Maximum age in nanoseconds of the snapshot used by a connection.
+     */
+    private final long maxStaleness;
+
+    /**
+     * Number of the next generation.
+     */
+    private final AtomicLong nextGeneration = new AtomicLong();
+
+    /**
+     * Periodic refresh of the replicas.
+     */
+    private volatile Future<?> refresh;
+
+    private volatile boolean closed;
+
+    /**
+     * Build the replicas of a database.
+     * @param replicasDir the directory of the replicas
+     * @param databaseName the name of the database
+     * @param size the number of replicas
+     * @param maxStaleness the maximum age in nanoseconds of the snapshot used by a connection
+     */
+    public ReplicaSet(File replicasDir, String databaseName, int size, long maxStaleness) {
+        this.replicasDir = replicasDir;
+        this.databaseName = databaseName;
+        this.replicas = new Generation[size];
+        this.maxStaleness = maxStaleness;
+    }
+
+    /**
+     * @return the number of replicas
+     */
+    public int size() {
+        return replicas.length;
+    }
+
+    /**
+     * @return the maximum age in nanoseconds of the snapshot used by a connection
+     */
+    public long getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    /**
+     * Sets the periodic refresh of the replicas.
+     * @param refresh the scheduled refresh
+     */
+    public void setRefresh(Future<?> refresh) {
+        this.refresh = refresh;
+    }
+
+    /**
+     * Takes a snapshot of the database and creates a new generation of each replica.
+     * @param server the started server of the database
+     * @param database the name of the database on the server (may be prefixed by a H2 file system)
+     * @throws SQLException if the snapshot can't be done
+     * @throws IOException if the replicas can't be written
+     */
+    public void refresh(H2Server server, String database) throws SQLException, IOException {
+        long snapshotTime = System.nanoTime();
+        File zip = File.createTempFile("h2-replica", ".zip");
+        try {
+            try (OutputStream out = Files.newOutputStream(zip.toPath())) {
+                DatabaseBackup.backup(server, database, out, 0);
+            }
+            // copies are done before the swap, connections use the previous generations meanwhile
+            File[] generationDirs = new File[replicas.length];
+            for (int i = 0; i < replicas.length; i++) {
+                generationDirs[i] = new File(replicasDir, String.valueOf(i).concat("-").concat(String.valueOf(nextGeneration.getAndIncrement())));
+                try (InputStream in = Files.newInputStream(zip.toPath())) {
+                    DatabaseBackup.restore(in, generationDirs[i], databaseName);
+                }
+            }
+            synchronized (this) {
+                for (int i = 0; i < replicas.length; i++) {
+                    Generation generation = new Generation(generationDirs[i], snapshotTime);
+                    if (closed) {
+                        generation.retire();
+                        continue;
+                    }
+                    Generation previous = replicas[i];
+                    replicas[i] = generation;
+                    if (previous != null) {
+                        previous.retire();
+                    }
+                }
+            }
+        } finally {
+            if (!zip.delete()) {
+                zip.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Opens a connection on the least loaded replica.
+     * @param info the connection properties (the users of the replicas are the users of the database)
+     * @return the connection or null if no replica has a snapshot within the staleness bound
+     * @throws SQLException if the replica can't be opened
+     */
+    public ReplicaConnection connect(Properties info) throws SQLException {
+        Generation generation;
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            generation = null;
+            for (Generation replica : replicas) {
+                if (replica != null && !replica.isStale(maxStaleness) && (generation == null || replica.connections.get() < generation.connections.get())) {
+                    generation = replica;
+                }
+            }
+            if (generation == null) {
+                return null;
+            }
+            generation.connections.incrementAndGet();
+        }
+        try {
+            Properties replicaInfo = new Properties();
+            replicaInfo.putAll(info);
+            // writes are rejected by H2
+            Connection connection = new JdbcConnection(generation.getUrl().concat(";ACCESS_MODE_DATA=r"), replicaInfo);
+            return new ReplicaConnection(generation, connection);
+        } catch (SQLException | RuntimeException e) {
+            generation.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the refresh, the replicas are deleted with their last connection.
+     */
+    public synchronized void close() {
+        closed = true;
+        Future<?> scheduledRefresh = refresh;
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        for (int i = 0; i < replicas.length; i++) {
+            if (replicas[i] != null) {
+                replicas[i].retire();
+                replicas[i] = null;
+            }
+        }
+    }
+
+    /**
+     * @return true if the replicas have been closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Snapshot of the database copied for a replica.
+     */
+    private class Generation {
+
+        private final File dir;
+
+        /**
+         * Time (System.nanoTime) of the snapshot.
+         */
+        private final long snapshotTime;
+
+        private final AtomicInteger connections = new AtomicInteger();
+
+        private volatile boolean retired;
+
+        private final AtomicBoolean deleted = new AtomicBoolean();
+
+        public Generation(File dir, long snapshotTime) {
+            this.dir = dir;
+            this.snapshotTime = snapshotTime;
+        }
+
+        public String getUrl() {
+            return "jdbc:h2:".concat(new File(dir, databaseName).getAbsolutePath());
+        }
+
+        public boolean isStale(long maxStaleness) {
+            return System.nanoTime() - snapshotTime > maxStaleness;
+        }
+
+        public void release() {
+            if (connections.decrementAndGet() == 0 && retired) {
+                delete();
+            }
+        }
+
+        public void retire() {
+            retired = true;
+            if (connections.get() == 0) {
+                delete();
+            }
+        }
+
+        private void delete() {
+            if (deleted.compareAndSet(false, true)) {
+                try {
+                    FileUtils.deleteRecursive(dir.getAbsolutePath(), false);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.FINE, "Unable to delete the replica " + dir, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Connection opened on a replica.
+     */
+    public static class ReplicaConnection {
+
+        private final Generation generation;
+
+        private final Connection connection;
+
+        private ReplicaConnection(Generation generation, Connection connection) {
+            this.generation = generation;
+            this.connection = connection;
+        }
+
+        /**
+         * @return the H2 connection of the replica
+         */
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * @param maxStaleness the maximum age in nanoseconds of the snapshot
+         * @return true if the snapshot of the replica is older than the given age
+         */
+        public boolean isStale(long maxStaleness) {
+            return generation.isStale(maxStaleness);
+        }
+
+        /**
+         * Closes the connection, the files of a retired replica are deleted with its last connection.
+         * @throws SQLException if the connection can't be closed
+         */
+        public void close() throws SQLException {
+            try {
+                connection.close();
+            } finally {
+                generation.release();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,372 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State of a port handled by the driver: the H2 server, the number of connections using it and its databases.
+ * The thread that creates the entry starts the server while other threads connecting on the same port wait for the end of the start.
+ * When the last reference is released, the entry is idle: it is retired and its server stopped, either immediately or after an idle timeout.
+ * A connection during the idle timeout reuses the server. Connectors of a retired entry wait until the server is stopped.
+ * @author Florent Benoit
+ */
+public class ServerEntry {
+
+    /**
+     * Value of the references when the entry can't be used anymore.
+     */
+    private static final int RETIRED = -1;
+
+    private final H2Server server;
+
+    private final PortMetrics metrics;
+
+    /**
+     * Number of connections using the server. The creator of the entry owns the first reference.
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * Databases of the port, by name.
+     */
+    private final ConcurrentMap<String, DatabaseEntry> databases = new ConcurrentHashMap<>();
+
+    /**
+     * Connections opened on the port (closed by force if they're still opened when the driver is stopped).
+     */
+    private final Set<H2ConnectionReference> connections = Collections.newSetFromMap(new ConcurrentHashMap<H2ConnectionReference, Boolean>());
+
+    /**
+     * Limit of the connections of the port (null if the connections are not limited).
+     */
+    private AdmissionControl admission;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private volatile Throwable startFailure;
+
+    /**
+     * Time in milliseconds during which the server is kept started without connections.
+     */
+    private final long idleTimeout;
+
+    /**
+     * Stop scheduled while the server is idle.
+     */
+    private volatile Future<?> pendingStop;
+
+    /**
+     * Periodic check of the server (null if the connections of the port don't use the VALIDATION_INTERVAL setting).
+     */
+    private Future<?> healthProbe;
+
+    /**
+     * Result of the last check of the server.
+     */
+    private volatile boolean healthy;
+
+    /**
+     * Time (System.nanoTime) of the last check of the server.
+     */
+    private volatile long healthCheckTime;
+
+    /**
+     * Build an entry for the given server.
+     * @param server the H2 server of the port
+     * @param idleTimeout time in milliseconds during which the server is kept started without connections
+     * @param metrics the counters of the port
+     */
+    public ServerEntry(H2Server server, long idleTimeout, PortMetrics metrics) {
+        this.server = server;
+        this.idleTimeout = idleTimeout;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the counters of the port
+     */
+    public PortMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the time in milliseconds during which the server is kept started without connections
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the stop scheduled while the server is idle.
+     * @param pendingStop the scheduled stop
+     */
+    public void setPendingStop(Future<?> pendingStop) {
+        this.pendingStop = pendingStop;
+    }
+
+    /**
+     * Sets the periodic check of the server if it is not yet set.
+     * @param healthProbe the scheduled check
+     * @return false if a check is already scheduled, in that case the given one should be cancelled
+     */
+    public synchronized boolean setHealthProbe(Future<?> healthProbe) {
+        if (this.healthProbe != null) {
+            return false;
+        }
+        this.healthProbe = healthProbe;
+        return true;
+    }
+
+    /**
+     * @return true if the server is periodically checked
+     */
+    public synchronized boolean hasHealthProbe() {
+        return healthProbe != null;
+    }
+
+    /**
+     * Cancels the periodic check of the server.
+     */
+    public synchronized void cancelHealthProbe() {
+        if (healthProbe != null) {
+            healthProbe.cancel(false);
+        }
+        healthy = false;
+    }
+
+    /**
+     * Notify the result of a check of the server.
+     * @param healthy true if the server accepts connections
+     */
+    public void healthChecked(boolean healthy) {
+        this.healthCheckTime = System.nanoTime();
+        this.healthy = healthy;
+    }
+
+    /**
+     * @param maxAge the maximum age in nanoseconds of the last check
+     * @return true if the server is used, started, and successfully checked during the given time
+     */
+    public boolean isHealthy(long maxAge) {
+        return healthy && references.get() != RETIRED && startFailure == null && System.nanoTime() - healthCheckTime < maxAge;
+    }
+
+    /**
+     * @return the H2 server of this entry
+     */
+    public H2Server getServer() {
+        return server;
+    }
+
+    /**
+     * Gets the entry of a database of this port, it is created on the first call.
+     * @param databaseName the name of the database
+     * @return the entry of the database
+     */
+    public DatabaseEntry getDatabase(String databaseName) {
+        DatabaseEntry database = databases.get(databaseName);
+        if (database == null) {
+            DatabaseEntry newDatabase = new DatabaseEntry(databaseName);
+            database = databases.putIfAbsent(databaseName, newDatabase);
+            if (database == null) {
+                database = newDatabase;
+            }
+        }
+        return database;
+    }
+
+    /**
+     * @return the databases used on this port
+     */
+    public Collection<DatabaseEntry> getDatabases() {
+        return databases.values();
+    }
+
+    /**
+     * Gets the limit of the connections of the port, it is created by the first caller.
+     * @param portNumber the port of the entry
+     * @param maxConnections the maximum number of connections opened at the same time
+     * @param maxQueueSize the maximum number of waiting connects
+     * @return the limit of the connections of the port
+     */
+    public synchronized AdmissionControl getAdmission(int portNumber, int maxConnections, int maxQueueSize) {
+        if (admission == null) {
+            admission = new AdmissionControl("port " + portNumber, maxConnections, maxQueueSize, metrics);
+        }
+        return admission;
+    }
+
+    /**
+     * Keeps a connection opened on the port.
+     * @param connection the opened connection
+     */
+    public void opened(H2ConnectionReference connection) {
+        connections.add(connection);
+    }
+
+    /**
+     * Forgets a connection closed on the port.
+     * @param connection the closed connection
+     */
+    public void closed(H2ConnectionReference connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * @return the connections currently opened on the port
+     */
+    public List<H2ConnectionReference> getConnections() {
+        return new ArrayList<>(connections);
+    }
+
+    /**
+     * @return the current number of references (0 if idle, -1 if the entry has been retired)
+     */
+    public int getReferences() {
+        return references.get();
+    }
+
+    /**
+     * Adds a reference on this entry.
+     * @return false if the entry has been retired, the caller should wait for the stop and use a new entry
+     */
+    public boolean acquire() {
+        for (;;) {
+            int current = references.get();
+            if (current == RETIRED) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                if (current == 0) {
+                    // used again, the scheduled stop is no longer needed
+                    Future<?> stop = pendingStop;
+                    if (stop != null) {
+                        stop.cancel(false);
+                    }
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes a reference on this entry.
+     * @return true if it was the last reference, in that case the caller should stop the server (now or after the idle timeout)
+     */
+    public boolean release() {
+        for (;;) {
+            int current = references.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current - 1)) {
+                return current == 1;
+            }
+        }
+    }
+
+    /**
+     * Retires the entry if it is still idle.
+     * @return true if the entry has been retired, in that case the caller should stop the server
+     */
+    public boolean retire() {
+        return references.compareAndSet(0, RETIRED);
+    }
+
+    /**
+     * Notify that the server has been started.
+     */
+    public void startSucceeded() {
+        healthChecked(true);
+        started.countDown();
+    }
+
+    /**
+     * Notify that the server can't be started. The entry is retired.
+     * @param e the cause of the failure
+     */
+    public void startFailed(Throwable e) {
+        this.startFailure = e;
+        references.set(RETIRED);
+        started.countDown();
+        stopped.countDown();
+    }
+
+    /**
+     * Notify that the server has been stopped.
+     */
+    public void stopCompleted() {
+        stopped.countDown();
+    }
+
+    /**
+     * @return true if the start of the server is done (successfully or not)
+     */
+    public boolean isStartDone() {
+        return started.getCount() == 0;
+    }
+
+    /**
+     * Wait until the server is started.
+     * @throws SQLException if the server can't be started or if the thread is interrupted
+     */
+    public void awaitStarted() throws SQLException {
+        try {
+            started.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the start of the associated H2 server", e);
+        }
+        if (startFailure != null) {
+            throw new SQLException("Unable to start the associated H2 server", startFailure);
+        }
+    }
+
+    /**
+     * Wait until the server is stopped or until the timeout.
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the server is stopped
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public boolean awaitStopped(long timeout, TimeUnit unit) throws InterruptedException {
+        return stopped.await(timeout, unit);
+    }
+
+    /**
+     * Wait until the server is stopped.
+     * @throws SQLException if the thread is interrupted
+     */
+    public void awaitStopped() throws SQLException {
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the stop of the associated H2 server", e);
+        }
+    }
+
+}
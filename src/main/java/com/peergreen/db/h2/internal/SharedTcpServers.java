@@ -0,0 +1,123 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.io.File;
+import java.sql.SQLException;
+
+import org.h2.tools.Server;
+
+/**
+ * Fixed set of physical H2 TCP servers shared by the logical ports of the driver.
+ * A logical port is always mapped on the same physical server (port modulo the number of servers) and its databases
+ * are stored in the tcp-port directory of the base directory, as with a dedicated server.
+ * Physical servers listen on a free port chosen by the system, they're started with their first logical port and stopped with the last one.
+ * @author Florent Benoit
+ */
+public class SharedTcpServers {
+
+    /**
+     * Base directory of all the physical servers.
+     */
+    private final File baseDir;
+
+    private final Slot[] slots;
+
+    /**
+     * Build a set of physical servers.
+     * @param baseDir the base directory of the servers
+     * @param size the number of physical servers
+     */
+    public SharedTcpServers(File baseDir, int size) {
+        this.baseDir = baseDir;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * @return the number of physical servers
+     */
+    public int size() {
+        return slots.length;
+    }
+
+    /**
+     * @return the base directory of the physical servers
+     */
+    public File getBaseDir() {
+        return baseDir;
+    }
+
+    /**
+     * Adds a logical port on its physical server. The physical server is started if needed.
+     * @param portNumber the logical port number
+     * @return the port number of the physical server
+     * @throws H2ServerException if the physical server cannot be created
+     * @throws SQLException if the physical server cannot be started
+     */
+    public int acquire(int portNumber) throws H2ServerException, SQLException {
+        Slot slot = slots[Math.abs(portNumber % slots.length)];
+        synchronized (slot) {
+            if (slot.server == null) {
+                Server server;
+                try {
+                    server = Server.createTcpServer("-tcpPort", "0", "-baseDir", baseDir.getPath());
+                } catch (SQLException e) {
+                    throw new H2ServerException("Unable to init the shared server", e);
+                }
+                server.start();
+                slot.server = server;
+            }
+            slot.references++;
+            return slot.server.getPort();
+        }
+    }
+
+    /**
+     * Removes a logical port of its physical server. The physical server is stopped if it was the last logical port.
+     * @param portNumber the logical port number
+     */
+    public void release(int portNumber) {
+        Slot slot = slots[Math.abs(portNumber % slots.length)];
+        synchronized (slot) {
+            if (slot.references > 0 && --slot.references == 0) {
+                slot.server.stop();
+                slot.server = null;
+            }
+        }
+    }
+
+    /**
+     * Checks that the physical server of a logical port accepts connections.
+     * @param portNumber the logical port number
+     * @return true if the physical server is started and accepts connections
+     */
+    public boolean isRunning(int portNumber) {
+        Slot slot = slots[Math.abs(portNumber % slots.length)];
+        synchronized (slot) {
+            return slot.server != null && slot.server.isRunning(true);
+        }
+    }
+
+    /**
+     * A physical server and the number of logical ports using it.
+     */
+    private static class Slot {
+
+        private Server server;
+
+        private int references;
+    }
+
+}
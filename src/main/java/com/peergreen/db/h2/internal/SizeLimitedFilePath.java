@@ -0,0 +1,150 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+import org.h2.store.fs.FileBase;
+import org.h2.store.fs.FilePath;
+import org.h2.store.fs.FilePathWrapper;
+
+/**
+ * H2 file system failing the writes which would make a file larger than the given size.
+ * The paths are limited:&lt;maximum size in bytes&gt;:&lt;path of the underlying file system&gt;.
+ * @author Florent Benoit
+ */
+public class SizeLimitedFilePath extends FilePathWrapper {
+
+    private static final String SCHEME = "limited";
+
+    private static volatile boolean registered;
+
+    /**
+     * Gets the given path with a limited size, the file system is registered in H2 if needed.
+     * @param path the H2 path of the file (for example memFS:name)
+     * @param maxSize the maximum size of the file in bytes
+     * @return the H2 path of the limited file
+     */
+    public static String getPath(String path, long maxSize) {
+        if (!registered) {
+            FilePath.register(new SizeLimitedFilePath());
+            registered = true;
+        }
+        return SCHEME + ":" + maxSize + ":" + path;
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    /**
+     * The size is kept by the paths of the files of a directory.
+     */
+    @Override
+    protected String getPrefix() {
+        return SCHEME + ":" + getMaxSize() + ":";
+    }
+
+    @Override
+    protected FilePath unwrap(String path) {
+        return FilePath.get(path.substring(path.indexOf(':', SCHEME.length() + 1) + 1));
+    }
+
+    @Override
+    public FileChannel open(String mode) throws IOException {
+        return new SizeLimitedFile(getBase().open(mode), name, getMaxSize());
+    }
+
+    /**
+     * @return the maximum size in bytes given by the path
+     */
+    private long getMaxSize() {
+        int start = SCHEME.length() + 1;
+        return Long.parseLong(name.substring(start, name.indexOf(':', start)));
+    }
+
+    /**
+     * File of the underlying file system checking the size before each write.
+     */
+    private static class SizeLimitedFile extends FileBase {
+
+        private final FileChannel channel;
+
+        private final String name;
+
+        private final long maxSize;
+
+        SizeLimitedFile(FileChannel channel, String name, long maxSize) {
+            this.channel = channel;
+            this.name = name;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            // rewriting the existing pages is allowed, only the growth is refused
+            long end = channel.position() + src.remaining();
+            if (end > maxSize && end > channel.size()) {
+                throw new IOException("The file " + name + " can't grow to " + end / 1024 + " KB, more than its maximum size of " + maxSize / 1024 + " KB");
+            }
+            return channel.write(src);
+        }
+
+        @Override
+        public FileChannel truncate(long newLength) throws IOException {
+            channel.truncate(newLength);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public synchronized FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+
+    }
+
+}
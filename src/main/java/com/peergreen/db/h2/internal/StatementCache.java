@@ -0,0 +1,218 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * LRU cache of the prepared statements of a physical connection, keyed by their SQL.
+ * Only the idle statements are kept by the cache: a statement is taken when it is prepared and given back when it is closed.
+ * The cache follows the physical connection so pooled connections keep their statements between two uses.
+ * All the statements are dropped when a DDL statement is executed on the connection.
+ * @author Florent Benoit
+ */
+public class StatementCache {
+
+    /**
+     * First keywords of the statements changing the schema (the cached statements may refer to the old definitions).
+     */
+    private static final Set<String> DDL_KEYWORDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("CREATE", "ALTER", "DROP", "TRUNCATE",
+            "COMMENT", "GRANT", "REVOKE", "RUNSCRIPT")));
+
+    private final int maxSize;
+
+    /**
+     * Idle statements, least recently used first.
+     */
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    /**
+     * Incremented each time the cache is invalidated. Statements taken before an invalidation are not cached again.
+     */
+    private int generation;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * Build a cache keeping at most the given number of statements.
+     * @param maxSize the maximum number of idle statements
+     */
+    public StatementCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return the current generation, to give back when the statement is returned
+     */
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Take the idle statement of the given SQL.
+     * @param sql the SQL of the statement
+     * @return the statement or null if it's not in the cache
+     */
+    public synchronized PreparedStatement take(String sql) {
+        PreparedStatement statement = statements.remove(sql);
+        if (statement == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return statement;
+    }
+
+    /**
+     * Give back a statement once it has been closed by the application. Its state is reset before being cached.
+     * The statement is closed if it can't be cached.
+     * @param sql the SQL of the statement
+     * @param statement the statement
+     * @param statementGeneration the generation of the cache when the statement was taken or prepared
+     */
+    public void put(String sql, PreparedStatement statement, int statementGeneration) {
+        if (!reset(statement)) {
+            closeQuietly(statement);
+            return;
+        }
+        PreparedStatement evicted = null;
+        synchronized (this) {
+            if (statementGeneration != generation || statements.containsKey(sql)) {
+                // schema has changed or the same SQL was prepared twice
+                evicted = statement;
+            } else {
+                statements.put(sql, statement);
+                if (statements.size() > maxSize) {
+                    Iterator<PreparedStatement> iterator = statements.values().iterator();
+                    evicted = iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+        closeQuietly(evicted);
+    }
+
+    /**
+     * Close all the idle statements. The statements in use are closed when they're given back.
+     */
+    public void invalidate() {
+        List<PreparedStatement> toClose;
+        synchronized (this) {
+            generation++;
+            toClose = new ArrayList<>(statements.values());
+            statements.clear();
+        }
+        for (PreparedStatement statement : toClose) {
+            closeQuietly(statement);
+        }
+    }
+
+    /**
+     * Invalidate the cache if the given SQL changes the schema.
+     * @param sql the SQL executed on the connection
+     */
+    public void executing(String sql) {
+        if (isDDL(sql)) {
+            invalidate();
+        }
+    }
+
+    /**
+     * @return the number of idle statements
+     */
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * @return the number of statements found in the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of statements that were not in the cache
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @param sql a SQL statement
+     * @return true if the statement changes the schema
+     */
+    protected static boolean isDDL(String sql) {
+        int length = sql.length();
+        int start = 0;
+        while (start < length && Character.isWhitespace(sql.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        while (end < length && Character.isLetter(sql.charAt(end))) {
+            end++;
+        }
+        String keyword = sql.substring(start, end).toUpperCase(Locale.ENGLISH);
+        if ("SET".equals(keyword)) {
+            // unqualified names are resolved with the current schema
+            return sql.substring(end).trim().toUpperCase(Locale.ENGLISH).startsWith("SCHEMA");
+        }
+        return DDL_KEYWORDS.contains(keyword);
+    }
+
+    /**
+     * Reset the statement before it's used again.
+     * @return false if the statement can't be reused
+     */
+    private static boolean reset(PreparedStatement statement) {
+        try {
+            if (statement.isClosed()) {
+                return false;
+            }
+            ResultSet resultSet = statement.getResultSet();
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        if (statement == null) {
+            return;
+        }
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // Ignored, statement is dropped
+        }
+    }
+
+}
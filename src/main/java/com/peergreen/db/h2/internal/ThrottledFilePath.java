@@ -0,0 +1,78 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.h2.store.fs.FilePath;
+import org.h2.store.fs.FilePathWrapper;
+
+/**
+ * H2 file system limiting the bytes written per second by the output streams of its files.
+ * It paces the BACKUP TO command, which reads, compresses and writes the backup in the same thread.
+ * The paths are throttled:&lt;bytes per second&gt;:&lt;path of the underlying file system&gt;.
+ * @author Florent Benoit
+ */
+public class ThrottledFilePath extends FilePathWrapper {
+
+    private static final String SCHEME = "throttled";
+
+    private static volatile boolean registered;
+
+    /**
+     * Gets the path of the given file with a limited write rate, the file system is registered in H2 if needed.
+     * @param file the file
+     * @param maxBytesPerSecond the maximum number of bytes written per second
+     * @return the H2 path of the file
+     */
+    public static String getPath(File file, long maxBytesPerSecond) {
+        if (!registered) {
+            FilePath.register(new ThrottledFilePath());
+            registered = true;
+        }
+        return SCHEME + ":" + maxBytesPerSecond + ":" + file.getAbsolutePath();
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    /**
+     * The rate is kept by the paths of the files of a directory.
+     */
+    @Override
+    protected String getPrefix() {
+        return SCHEME + ":" + getMaxBytesPerSecond() + ":";
+    }
+
+    @Override
+    protected FilePath unwrap(String path) {
+        return FilePath.get(path.substring(path.indexOf(':', SCHEME.length() + 1) + 1));
+    }
+
+    @Override
+    public OutputStream newOutputStream(boolean append) throws IOException {
+        return new ThrottledOutputStream(getBase().newOutputStream(append), getMaxBytesPerSecond());
+    }
+
+    /**
+     * @return the maximum number of bytes written per second given by the path
+     */
+    private long getMaxBytesPerSecond() {
+        int start = SCHEME.length() + 1;
+        return Long.parseLong(name.substring(start, name.indexOf(':', start)));
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream sleeping when the bytes are written faster than the given rate.
+ * @author Florent Benoit
+ */
+public class ThrottledOutputStream extends FilterOutputStream {
+
+    /**
+     * Maximum number of bytes written per second (0 if not limited).
+     */
+    private final long maxBytesPerSecond;
+
+    private final long startTime = System.nanoTime();
+
+    private long written;
+
+    /**
+     * Build a stream limiting the rate of the given stream.
+     * @param out the stream receiving the bytes
+     * @param maxBytesPerSecond the maximum number of bytes written per second (0 if not limited)
+     */
+    public ThrottledOutputStream(OutputStream out, long maxBytesPerSecond) {
+        super(out);
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        written(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        written(len);
+    }
+
+    /**
+     * Sleeps until the written bytes are within the rate.
+     */
+    private void written(int length) throws IOException {
+        written += length;
+        if (maxBytesPerSecond <= 0) {
+            return;
+        }
+        long expected = (long) (written * 1e9 / maxBytesPerSecond);
+        long ahead = expected - (System.nanoTime() - startTime);
+        if (ahead > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(ahead);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing at a limited rate");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Database to open when the driver is validated.
+ * The configuration is a list of pg+h2 URLs separated by commas or white spaces, for example:
+ * jdbc:pg+h2:tcp://localhost:1234/first;USER=sa;PASSWORD=secret, jdbc:pg+h2:tcp://localhost:1235/second
+ * The USER and PASSWORD settings of the URL are given as connection properties so the user is provisioned.
+ * @author Florent Benoit
+ */
+public class WarmUpEntry {
+
+    private final String url;
+
+    private final Properties info;
+
+    /**
+     * Build an entry.
+     * @param url the URL without the user and the password
+     * @param info the properties with the user and the password
+     */
+    public WarmUpEntry(String url, Properties info) {
+        this.url = url;
+        this.info = info;
+    }
+
+    /**
+     * @return the URL to connect to
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the connection properties
+     */
+    public Properties getInfo() {
+        return info;
+    }
+
+    /**
+     * Parse the given configuration.
+     * @param configuration the URLs separated by commas or white spaces (may be null)
+     * @return the databases to open
+     */
+    public static List<WarmUpEntry> parse(String configuration) {
+        List<WarmUpEntry> entries = new ArrayList<>();
+        if (configuration == null) {
+            return entries;
+        }
+        for (String value : configuration.split("[,\\s]+")) {
+            if (value.isEmpty()) {
+                continue;
+            }
+            Properties info = new Properties();
+            StringBuilder url = new StringBuilder();
+            String[] parts = value.split(";");
+            url.append(parts[0]);
+            for (int i = 1; i < parts.length; i++) {
+                String part = parts[i];
+                String upperPart = part.toUpperCase(Locale.ENGLISH);
+                if (upperPart.startsWith("USER=")) {
+                    info.setProperty("user", part.substring("USER=".length()));
+                } else if (upperPart.startsWith("PASSWORD=")) {
+                    info.setProperty("password", part.substring("PASSWORD=".length()));
+                } else {
+                    url.append(';').append(part);
+                }
+            }
+            entries.add(new WarmUpEntry(url.toString(), info));
+        }
+        return entries;
+    }
+
+}
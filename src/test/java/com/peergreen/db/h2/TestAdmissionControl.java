@@ -0,0 +1,95 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the limit of the connections opened at the same time on a port.
+ * @author Florent Benoit
+ */
+public class TestAdmissionControl {
+
+    private final int portNumber = 1527;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/admissiondatabase;MAX_CONNECTIONS=1;ADMISSION_QUEUE_SIZE=1;ADMISSION_TIMEOUT=5000";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testQueuedConnects() throws SQLException, InterruptedException, ExecutionException, TimeoutException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Connection connection = h2Driver.connect(jdbcURL, null)) {
+            Future<Connection> waiting = executor.submit(new Callable<Connection>() {
+                @Override
+                public Connection call() throws SQLException {
+                    return h2Driver.connect(jdbcURL, null);
+                }
+            });
+            long deadline = System.currentTimeMillis() + 5000;
+            while (h2Driver.getStatistics().getPortStatistics(portNumber).getQueuedConnects() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(h2Driver.getStatistics().getPortStatistics(portNumber).getQueuedConnects(), 1);
+
+            // queue is full
+            try {
+                h2Driver.connect(jdbcURL, null);
+                fail("Queue is full");
+            } catch (SQLException e) {
+                // expected
+            }
+            assertFalse(waiting.isDone());
+
+            // waiting connect admitted when the connection is closed
+            connection.close();
+            try (Connection admitted = waiting.get(5, TimeUnit.SECONDS)) {
+                assertFalse(admitted.isClosed());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        PortStatistics statistics = h2Driver.getStatistics().getPortStatistics(portNumber);
+        assertTrue(statistics.getAdmissionWaits() >= 1);
+        assertTrue(statistics.getAdmissionRejections() >= 1);
+    }
+
+    @Test
+    public void testAdmissionTimeout() throws SQLException {
+        String url = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/admissiondatabase;MAX_DATABASE_CONNECTIONS=1;ADMISSION_TIMEOUT=100";
+        try (Connection connection = h2Driver.connect(url, null)) {
+            long startTime = System.nanoTime();
+            try {
+                h2Driver.connect(url, null);
+                fail("No connection available");
+            } catch (SQLException e) {
+                assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) >= 100);
+            }
+        }
+    }
+
+}
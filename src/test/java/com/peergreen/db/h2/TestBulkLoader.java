@@ -0,0 +1,118 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test the bulk load of rows through a connection of the driver.
+ * @author Florent Benoit
+ */
+public class TestBulkLoader {
+
+    private final int portNumber = 1522;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/bulkdatabase";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    private Connection connection;
+
+    @BeforeMethod
+    public void createTable() throws SQLException {
+        connection = h2Driver.connect(jdbcURL, null);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE bulkTable IF EXISTS");
+            statement.execute("CREATE TABLE bulkTable(id int primary key, name varchar(100))");
+            statement.execute("CREATE INDEX bulkName ON bulkTable(name)");
+        }
+    }
+
+    @AfterMethod
+    public void close() throws SQLException {
+        connection.close();
+    }
+
+    private int count() throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM bulkTable")) {
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+
+    @Test
+    public void testLoadIterator() throws SQLException {
+        assertTrue(connection.isWrapperFor(BulkLoader.class));
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            rows.add(new Object[] {i, "name" + i});
+        }
+        final AtomicLong progress = new AtomicLong();
+        BulkLoadOptions options = new BulkLoadOptions().setRebuildIndexes(true).setCommitInterval(1000).setListener(new BulkLoadListener() {
+            @Override
+            public void progress(long rows, double rowsPerSecond, int batchSize) {
+                progress.set(rows);
+            }
+        });
+        long loaded = connection.unwrap(BulkLoader.class).load("bulkTable", new String[] {"id", "name"}, rows.iterator(), options);
+        assertEquals(loaded, 10000);
+        assertEquals(progress.get(), 10000);
+        assertEquals(count(), 10000);
+        assertTrue(connection.getAutoCommit());
+
+        // index created again
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME = 'BULKNAME'")) {
+            assertTrue(resultSet.next());
+            assertEquals(resultSet.getInt(1), 1);
+        }
+    }
+
+    @Test
+    public void testLoadCsv() throws SQLException {
+        String csv = "ID,NAME\n1,first\n2,second\n3,third\n";
+        long loaded = connection.unwrap(BulkLoader.class).loadCsv("bulkTable", null, new StringReader(csv), null);
+        assertEquals(loaded, 3);
+        assertEquals(count(), 3);
+    }
+
+    @Test
+    public void testFailedLoadIsRolledBack() throws SQLException {
+        // duplicate key in the only commit interval
+        Iterator<Object[]> rows = Arrays.asList(new Object[] {1, "a"}, new Object[] {2, "b"}, new Object[] {1, "c"}).iterator();
+        try {
+            connection.unwrap(BulkLoader.class).load("bulkTable", new String[] {"id", "name"}, rows, new BulkLoadOptions().setBatchSize(10));
+            fail("Duplicate key");
+        } catch (SQLException e) {
+            // expected
+        }
+        assertEquals(count(), 0);
+    }
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the reclamation of the connections which are not closed.
+ * @author Florent Benoit
+ */
+public class TestConnectionLeaks {
+
+    private final int portNumber = 1526;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/leakdatabase;LEAK_TRACE_SAMPLING=1";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    private int openConnections() {
+        PortStatistics statistics = h2Driver.getStatistics().getPortStatistics(portNumber);
+        return statistics == null ? 0 : statistics.getOpenConnections();
+    }
+
+    private void leak() throws SQLException {
+        h2Driver.connect(jdbcURL, null);
+    }
+
+    @Test
+    public void testLeakedConnectionIsReclaimed() throws SQLException, InterruptedException {
+        leak();
+        assertEquals(openConnections(), 1);
+
+        long deadline = System.currentTimeMillis() + 20000;
+        while (openConnections() > 0 && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        assertEquals(openConnections(), 0);
+    }
+
+    @Test(dependsOnMethods = "testLeakedConnectionIsReclaimed")
+    public void testConnectionHeldTooLongIsClosed() throws SQLException, InterruptedException {
+        try (Connection connection = h2Driver.connect(jdbcURL + ";MAX_HOLD_TIME=100", null)) {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!connection.isClosed() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(connection.isClosed());
+        }
+        assertEquals(openConnections(), 0);
+    }
+
+}
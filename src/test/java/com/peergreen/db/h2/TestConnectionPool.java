@@ -0,0 +1,95 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the pool of connections of the Peergreen/H2 driver.
+ * @author Florent Benoit
+ */
+public class TestConnectionPool {
+
+    private final int portNumber = 1504;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/pooldatabase;POOL_MAX_SIZE=2;POOL_MIN_SIZE=1";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testPhysicalConnectionReused() throws SQLException, IOException {
+        Connection keeper = h2Driver.connect(jdbcURL, null);
+
+        Connection first = h2Driver.connect(jdbcURL, null);
+        int sessionId = getSessionId(first);
+        first.setAutoCommit(false);
+        first.close();
+        assertTrue(first.isClosed());
+        try {
+            first.createStatement();
+            fail("Connection has been given back to the pool");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        Connection second = h2Driver.connect(jdbcURL, null);
+        assertEquals(getSessionId(second), sessionId);
+        assertTrue(second.getAutoCommit());
+        second.close();
+
+        keeper.close();
+        assertNotRunning();
+    }
+
+    @Test(dependsOnMethods = "testPhysicalConnectionReused")
+    public void testPoolExhausted() throws SQLException, IOException {
+        Connection first = h2Driver.connect(jdbcURL, null);
+        Connection second = h2Driver.connect(jdbcURL, null);
+        try {
+            h2Driver.connect(jdbcURL, null);
+            fail("Pool should be exhausted");
+        } catch (SQLException e) {
+            // expected
+        }
+        first.close();
+        second.close();
+        assertNotRunning();
+    }
+
+    protected int getSessionId(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery("CALL SESSION_ID()")) {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+
+    protected void assertNotRunning() {
+        try (Socket socket = new Socket("localhost", portNumber)) {
+            assertFalse(socket.isConnected(), "Server should be stopped");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+}
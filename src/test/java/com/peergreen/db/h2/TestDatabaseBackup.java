@@ -0,0 +1,98 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the online backup and the restore of the databases.
+ * @author Florent Benoit
+ */
+public class TestDatabaseBackup {
+
+    private final int portNumber = 1521;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/backupdatabase";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    private int count(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM backupTable")) {
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+
+    @Test
+    public void testBackupWhileOpenedAndRestore() throws SQLException, IOException {
+        ByteArrayOutputStream backup = new ByteArrayOutputStream();
+        try (Connection connection = h2Driver.connect(jdbcURL, null)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE backupTable IF EXISTS");
+                statement.execute("CREATE TABLE backupTable(id int primary key)");
+                statement.execute("INSERT INTO backupTable VALUES(1)");
+            }
+
+            // database keeps serving
+            h2Driver.backup(portNumber, "backupdatabase", backup, 10 * 1024 * 1024);
+            assertTrue(backup.size() > 0);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("INSERT INTO backupTable VALUES(2)");
+            }
+            assertEquals(count(connection), 2);
+
+            // server is started
+            try {
+                h2Driver.restore(portNumber, "backupdatabase", new ByteArrayInputStream(backup.toByteArray()));
+                fail("Server is started");
+            } catch (SQLException e) {
+                // expected
+            }
+        }
+
+        h2Driver.restore(portNumber, "backupdatabase", new ByteArrayInputStream(backup.toByteArray()));
+        try (Connection connection = h2Driver.connect(jdbcURL, null)) {
+            assertEquals(count(connection), 1);
+        }
+
+        // another database of the backup
+        try {
+            h2Driver.restore(portNumber, "otherdatabase", new ByteArrayInputStream(backup.toByteArray()));
+            fail("Backup doesn't contain the database");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBackupOfMissingDatabase() throws IOException {
+        try {
+            h2Driver.backup(portNumber, "missing" + System.nanoTime(), new ByteArrayOutputStream(), 0);
+            fail("Database doesn't exist");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the compaction of the idle databases.
+ * @author Florent Benoit
+ */
+public class TestDatabaseCompaction {
+
+    private final int portNumber = 1525;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/compactdatabase;COMPACT_IDLE_TIME=200;COMPACT_MIN_SIZE=0";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testIdleDatabaseIsCompacted() throws SQLException, InterruptedException {
+        File databaseFile = new File(System.getProperty("java.io.tmpdir"), "tcp-" + portNumber + File.separator + "compactdatabase.h2.db");
+        long length;
+        // H2 doesn't compact the file itself when the last session is closed (persistent setting)
+        try (Connection connection = h2Driver.connect(jdbcURL + ";MAX_COMPACT_TIME=0", null); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE compactTable IF EXISTS");
+            statement.execute("CREATE TABLE compactTable(id int primary key, data varchar(1000))");
+            statement.execute("INSERT INTO compactTable SELECT X, SPACE(1000) FROM SYSTEM_RANGE(1, 20000)");
+            // the remaining rows are spread over the whole file so it can't be truncated
+            statement.execute("DELETE FROM compactTable WHERE MOD(id, 100) <> 0");
+            statement.execute("CHECKPOINT");
+            length = databaseFile.length();
+        }
+        assertTrue(length > 10 * 1024 * 1024, "Database file of " + length + " bytes");
+
+        // compacted once the database is idle
+        long deadline = System.currentTimeMillis() + 10000;
+        while (h2Driver.getStatistics().getPortStatistics(portNumber).getCompactions() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        PortStatistics statistics = h2Driver.getStatistics().getPortStatistics(portNumber);
+        assertEquals(statistics.getCompactions(), 1);
+        // only 1% of the rows are left
+        assertTrue(statistics.getReclaimedBytes() > length / 2, statistics.getReclaimedBytes() + " bytes reclaimed on " + length);
+        assertTrue(databaseFile.length() < length / 4, "Database file of " + databaseFile.length() + " bytes after the compaction");
+
+        try (Connection connection = h2Driver.connect(jdbcURL, null); Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM compactTable")) {
+            assertTrue(resultSet.next());
+            assertEquals(resultSet.getInt(1), 200);
+        }
+    }
+
+}
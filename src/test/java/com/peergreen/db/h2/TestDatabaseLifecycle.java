@@ -0,0 +1,86 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.h2.jdbc.JdbcConnection;
+import org.testng.annotations.Test;
+
+/**
+ * Test the lifecycle of several databases on the same port.
+ * @author Florent Benoit
+ */
+public class TestDatabaseLifecycle {
+
+    private final int portNumber = 1513;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testDatabasesOnSamePort() throws SQLException, IOException {
+        Connection first = h2Driver.connect(jdbcURL + "firstdatabase", credentials("alice", "alicepassword"));
+
+        // user of the second database is provisioned although the server is already started
+        Connection second = h2Driver.connect(jdbcURL + "seconddatabase;POOL_MAX_SIZE=1", credentials("bob", "bobpassword"));
+        try (Connection admin = DriverManager.getConnection("jdbc:h2:tcp://localhost:" + portNumber + "/seconddatabase", "", "");
+                Statement statement = admin.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.USERS WHERE NAME = 'BOB' AND ADMIN = 'true'")) {
+            assertTrue(resultSet.next());
+            assertEquals(resultSet.getInt(1), 1);
+        }
+
+        // last connection of the second database: its pooled connection is closed while the first database is still used
+        JdbcConnection physicalConnection = second.unwrap(JdbcConnection.class);
+        second.close();
+        assertTrue(physicalConnection.isClosed());
+        assertFalse(first.isClosed());
+        checkRunning(true);
+
+        first.close();
+        checkRunning(false);
+    }
+
+    protected Properties credentials(String user, String password) {
+        Properties info = new Properties();
+        info.setProperty("user", user);
+        info.setProperty("password", password);
+        return info;
+    }
+
+    protected void checkRunning(boolean running) throws IOException {
+        try (Socket socket = new Socket("localhost", portNumber)) {
+            if (!running) {
+                fail("Server should be stopped");
+            }
+        } catch (IOException e) {
+            if (running) {
+                throw e;
+            }
+        }
+    }
+
+}
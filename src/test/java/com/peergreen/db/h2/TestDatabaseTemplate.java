@@ -0,0 +1,109 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test the creation of databases from a template.
+ * @author Florent Benoit
+ */
+public class TestDatabaseTemplate {
+
+    private final int portNumber = 1520;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @BeforeClass
+    public void createTemplate() throws SQLException {
+        try (Connection connection = h2Driver.connect(jdbcURL + "templatebase", null); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE templateTable IF EXISTS");
+            statement.execute("CREATE TABLE templateTable(id int primary key)");
+            statement.execute("INSERT INTO templateTable VALUES(1)");
+        }
+    }
+
+    private int count(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM templateTable")) {
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+
+    @Test
+    public void testCopyOfPortDatabase() throws SQLException {
+        String clone = "clone" + System.nanoTime();
+        try (Connection connection = h2Driver.connect(jdbcURL + clone + ";TEMPLATE=templatebase", null)) {
+            assertEquals(count(connection), 1);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("INSERT INTO templateTable VALUES(2)");
+            }
+        }
+
+        // existing database is not copied again
+        try (Connection connection = h2Driver.connect(jdbcURL + clone + ";TEMPLATE=templatebase", null)) {
+            assertEquals(count(connection), 2);
+        }
+
+        // template is unchanged
+        try (Connection connection = h2Driver.connect(jdbcURL + "templatebase", null)) {
+            assertEquals(count(connection), 1);
+        }
+    }
+
+    @Test
+    public void testRegisteredTemplate() throws SQLException {
+        File templateDatabase = new File(new File(System.getProperty("java.io.tmpdir"), "tcp-" + portNumber), "templatebase");
+        h2Driver.registerTemplate("registered", templateDatabase);
+        try (Connection connection = h2Driver.connect(jdbcURL + "registered" + System.nanoTime() + ";TEMPLATE=registered", null)) {
+            assertEquals(count(connection), 1);
+        } finally {
+            h2Driver.unregisterTemplate("registered");
+        }
+    }
+
+    @Test
+    public void testOpenedTemplate() throws SQLException {
+        try (Connection connection = h2Driver.connect(jdbcURL + "templatebase", null)) {
+            try {
+                h2Driver.connect(jdbcURL + "opened" + System.nanoTime() + ";TEMPLATE=templatebase", null).close();
+                fail("Template is opened");
+            } catch (SQLException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testMissingTemplate() {
+        try {
+            h2Driver.connect(jdbcURL + "missing" + System.nanoTime() + ";TEMPLATE=unknowntemplate", null).close();
+            fail("Template doesn't exist");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the statistics of the Peergreen/H2 driver.
+ * @author Florent Benoit
+ */
+public class TestDriverStatistics {
+
+    private final int portNumber = 1509;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/statisticsdatabase";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testPortStatistics() throws SQLException {
+        Connection first = h2Driver.connect(jdbcURL, null);
+        Connection second = h2Driver.connect(jdbcURL, null);
+
+        PortStatistics statistics = h2Driver.getStatistics().getPortStatistics(portNumber);
+        assertNotNull(statistics);
+        assertTrue(statistics.isServerUp());
+        assertEquals(statistics.getOpenConnections(), 2);
+        assertEquals(statistics.getPeakConnections(), 2);
+        assertEquals(statistics.getServerStarts(), 1);
+
+        first.close();
+        second.close();
+
+        statistics = h2Driver.getStatistics().getPortStatistics(portNumber);
+        assertFalse(statistics.isServerUp());
+        assertEquals(statistics.getOpenConnections(), 0);
+        assertEquals(statistics.getPeakConnections(), 2);
+        assertEquals(statistics.getConnects(), 2);
+        assertEquals(statistics.getServerStops(), 1);
+    }
+
+}
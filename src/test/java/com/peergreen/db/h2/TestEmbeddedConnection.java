@@ -0,0 +1,68 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the embedded connections on the database of a server started by the driver.
+ * @author Florent Benoit
+ */
+public class TestEmbeddedConnection {
+
+    private final int portNumber = 1508;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/embeddeddatabase";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testEmbeddedSharesTcpDatabase() throws SQLException, IOException {
+        Connection embeddedConnection = h2Driver.connect(jdbcURL.concat(";EMBEDDED=true"), null);
+        assertFalse(embeddedConnection.getMetaData().getURL().startsWith("jdbc:h2:tcp:"));
+
+        // server is started even if connection is embedded
+        new Socket("localhost", portNumber).close();
+
+        try (Statement statement = embeddedConnection.createStatement()) {
+            statement.execute("DROP TABLE embeddedTable IF EXISTS");
+            statement.execute("CREATE TABLE embeddedTable(id int primary key, name varchar(100))");
+            statement.execute("INSERT INTO embeddedTable VALUES(1, 'embedded')");
+        }
+
+        // same data through TCP
+        try (Connection tcpConnection = h2Driver.connect(jdbcURL, null); Statement statement = tcpConnection.createStatement(); ResultSet rs = statement.executeQuery("SELECT name FROM embeddedTable")) {
+            assertTrue(tcpConnection.getMetaData().getURL().startsWith("jdbc:h2:tcp:"));
+            assertTrue(rs.next());
+            assertEquals(rs.getString(1), "embedded");
+        }
+
+        embeddedConnection.close();
+        try (Socket socket = new Socket("localhost", portNumber)) {
+            assertFalse(socket.isConnected(), "Server should be stopped");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+}
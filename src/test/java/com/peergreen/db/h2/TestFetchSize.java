@@ -0,0 +1,115 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the fetch size and the rows kept in memory by the results of the connections.
+ * @author Florent Benoit
+ */
+public class TestFetchSize {
+
+    private final int portNumber = 1523;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/fetchdatabase;FETCH_SIZE=500;RESULT_MEMORY_ROWS=10000";
+
+    /**
+     * Same query without the limits, the whole result is kept in memory.
+     */
+    private final String unlimitedURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/fetchunlimiteddatabase;RESULT_MEMORY_ROWS=" + (ROWS + 1);
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    /**
+     * Heap that may be used while iterating (the whole result uses more than a hundred megabytes).
+     */
+    private static final long MAX_HEAP_GROWTH = 48L * 1024 * 1024;
+
+    private static final int ROWS = 1000000;
+
+    @Test
+    public void testDefaultFetchSize() throws SQLException {
+        try (Connection connection = h2Driver.connect(jdbcURL, null); Statement statement = connection.createStatement();
+                PreparedStatement preparedStatement = connection.prepareStatement("SELECT 1")) {
+            assertEquals(statement.getFetchSize(), 500);
+            assertEquals(preparedStatement.getFetchSize(), 500);
+        }
+    }
+
+    @Test
+    public void testResultMemoryRowsOfDatabase() throws SQLException {
+        try (Connection connection = h2Driver.connect(jdbcURL, null); Statement statement = connection.createStatement()) {
+            // applied once on the database by the driver
+            try (ResultSet resultSet = statement.executeQuery("SELECT VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE NAME = 'MAX_MEMORY_ROWS'")) {
+                assertTrue(resultSet.next());
+                assertEquals(resultSet.getString(1), "10000");
+            }
+            // another value would change the results of the opened connection
+            try {
+                h2Driver.connect("jdbc:pg+h2:tcp://localhost:" + portNumber + "/fetchdatabase;RESULT_MEMORY_ROWS=20000", null).close();
+                fail("The database is opened with another value");
+            } catch (SQLException e) {
+                assertTrue(e.getMessage().contains("RESULT_MEMORY_ROWS=10000"), e.getMessage());
+            }
+            // without the setting, the value of the database is used
+            h2Driver.connect("jdbc:pg+h2:tcp://localhost:" + portNumber + "/fetchdatabase", null).close();
+        }
+    }
+
+    @Test
+    public void testHeapStaysFlat() throws SQLException {
+        long limitedGrowth = getHeapGrowth(jdbcURL);
+        assertTrue(limitedGrowth < MAX_HEAP_GROWTH, "Heap has grown of " + limitedGrowth + " bytes");
+        // control run, the measure sees the result kept in memory
+        long unlimitedGrowth = getHeapGrowth(unlimitedURL);
+        assertTrue(unlimitedGrowth > MAX_HEAP_GROWTH, "Heap has grown of " + unlimitedGrowth + " bytes without the limits");
+    }
+
+    /**
+     * Iterates over a large result.
+     * @return the largest growth of the heap seen while the result was opened
+     */
+    private long getHeapGrowth(String url) throws SQLException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        try (Connection connection = h2Driver.connect(url, null); Statement statement = connection.createStatement()) {
+            System.gc();
+            long baseline = memory.getHeapMemoryUsage().getUsed();
+            long maxGrowth = 0;
+            long count = 0;
+            try (ResultSet resultSet = statement.executeQuery("SELECT X, SPACE(20) FROM SYSTEM_RANGE(1, " + ROWS + ")")) {
+                while (resultSet.next()) {
+                    count++;
+                    if (count % 100000 == 0) {
+                        System.gc();
+                        maxGrowth = Math.max(maxGrowth, memory.getHeapMemoryUsage().getUsed() - baseline);
+                    }
+                }
+            }
+            assertEquals(count, ROWS);
+            return maxGrowth;
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the file systems used to open the databases.
+ * @author Florent Benoit
+ */
+public class TestFileStore {
+
+    private final int portNumber = 1519;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/storedatabase";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testServerAndEmbeddedOnSameFileStore() throws SQLException {
+        Properties info = new Properties();
+        info.setProperty("user", "store");
+        info.setProperty("password", "store");
+        info.setProperty("FILE_STORE", "nioMapped");
+        try (Connection connection = h2Driver.connect(jdbcURL, info)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE storeTable IF EXISTS");
+                statement.execute("CREATE TABLE storeTable(id int primary key)");
+                statement.execute("INSERT INTO storeTable VALUES(1)");
+            }
+
+            // same database opened in embedded mode
+            try (Connection embedded = h2Driver.connect(jdbcURL + ";EMBEDDED=true", info); Statement statement = embedded.createStatement();
+                    ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM storeTable")) {
+                assertTrue(resultSet.next());
+                assertEquals(resultSet.getInt(1), 1);
+            }
+
+            // can't be opened with another file system
+            try {
+                h2Driver.connect(jdbcURL + ";FILE_STORE=nio", info).close();
+                fail("Database is opened with the nioMapped file store");
+            } catch (SQLException e) {
+                // expected
+            }
+        }
+
+        // closed, can be opened with another file system
+        try (Connection connection = h2Driver.connect(jdbcURL + ";FILE_STORE=nio", info); Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM storeTable")) {
+            assertTrue(resultSet.next());
+            assertEquals(resultSet.getInt(1), 1);
+        }
+    }
+
+    @Test
+    public void testInvalidFileStore() {
+        try {
+            h2Driver.connect(jdbcURL + ";FILE_STORE=unknown", null).close();
+            fail("Invalid file store");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the in-memory databases handled by the driver.
+ * @author Florent Benoit
+ */
+public class TestMemoryDatabase {
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testDroppedWithLastConnection() throws SQLException {
+        String jdbcURL = "jdbc:pg+h2:mem:memorydatabase";
+        Connection first = h2Driver.connect(jdbcURL, null);
+        assertTrue(first.getMetaData().getURL().startsWith("jdbc:h2:mem:"));
+        try (Statement statement = first.createStatement()) {
+            statement.execute("CREATE TABLE memoryTable(id int primary key)");
+            statement.execute("INSERT INTO memoryTable VALUES(1)");
+        }
+
+        // kept while a connection is opened, another user is provisioned
+        Properties info = new Properties();
+        info.setProperty("user", "memory");
+        info.setProperty("password", "memory");
+        try (Connection second = h2Driver.connect(jdbcURL, info); Statement statement = second.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM memoryTable")) {
+            assertTrue(resultSet.next());
+            assertEquals(resultSet.getInt(1), 1);
+        }
+        first.close();
+
+        // dropped, a new database is created
+        try (Connection connection = h2Driver.connect(jdbcURL, null); Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'MEMORYTABLE'")) {
+            assertTrue(resultSet.next());
+            assertEquals(resultSet.getInt(1), 0);
+        }
+    }
+
+    @Test
+    public void testMaxSize() throws SQLException {
+        String jdbcURL = "jdbc:pg+h2:mem:limiteddatabase;MEMORY_MAX_SIZE=256";
+        try (Connection connection = h2Driver.connect(jdbcURL, null)) {
+            assertFalse(connection.getMetaData().getURL().startsWith("jdbc:h2:mem:"));
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE limitedTable(id int primary key, value varchar(1000))");
+            }
+            // refused by the write making the database larger than its maximum size
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO limitedTable VALUES(?, SPACE(1000))");
+                    Statement checkpoint = connection.createStatement()) {
+                for (int i = 0; i < 1000; i++) {
+                    statement.setInt(1, i);
+                    statement.executeUpdate();
+                }
+                checkpoint.execute("CHECKPOINT");
+                fail("Database is larger than its maximum size");
+            } catch (SQLException e) {
+                // expected
+            }
+        }
+
+        // dropped with its last connection, the size is back to zero
+        h2Driver.connect(jdbcURL, null).close();
+    }
+
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the slow query log and the statistics by SQL.
+ * @author Florent Benoit
+ */
+public class TestQueryLog {
+
+    private final int portNumber = 1510;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/querydatabase;SLOW_QUERY_THRESHOLD=0;QUERY_STATISTICS=true";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testStatementsMeasured() throws SQLException {
+        final List<LogRecord> records = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger("com.peergreen.db.h2.slowquery");
+        logger.addHandler(handler);
+
+        try (Connection connection = h2Driver.connect(jdbcURL, null)) {
+            try (Statement statement = connection.createStatement()) {
+                assertSame(statement.getConnection(), connection);
+                statement.execute("DROP TABLE queryTable IF EXISTS");
+                statement.execute("CREATE TABLE queryTable(id int primary key, name varchar(100))");
+            }
+            String insert = "INSERT INTO queryTable VALUES(?, ?)";
+            try (PreparedStatement preparedStatement = connection.prepareStatement(insert)) {
+                for (int i = 0; i < 3; i++) {
+                    preparedStatement.setInt(1, i);
+                    preparedStatement.setString(2, "name" + i);
+                    assertEquals(preparedStatement.executeUpdate(), 1);
+                }
+            }
+            String select = "SELECT * FROM queryTable";
+            try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(select)) {
+                int rows = 0;
+                while (resultSet.next()) {
+                    rows++;
+                }
+                assertEquals(rows, 3);
+                assertSame(resultSet.getStatement(), statement);
+            }
+
+            QueryStatistics insertStatistics = null;
+            QueryStatistics selectStatistics = null;
+            for (QueryStatistics statistics : h2Driver.getStatistics().getQueryStatistics()) {
+                if (statistics.getPortNumber() == portNumber && insert.equals(statistics.getSql())) {
+                    insertStatistics = statistics;
+                } else if (statistics.getPortNumber() == portNumber && select.equals(statistics.getSql())) {
+                    selectStatistics = statistics;
+                }
+            }
+            assertNotNull(insertStatistics);
+            assertEquals(insertStatistics.getExecutions(), 3);
+            assertEquals(insertStatistics.getRows(), 3);
+            assertTrue(insertStatistics.getP99() >= insertStatistics.getP50());
+            assertNotNull(selectStatistics);
+            assertEquals(selectStatistics.getExecutions(), 1);
+            assertEquals(selectStatistics.getRows(), 3);
+        } finally {
+            logger.removeHandler(handler);
+        }
+
+        // threshold is 0 so all the statements are logged
+        assertEquals(records.size(), 6);
+    }
+
+    @Test
+    public void testMoreResults() throws SQLException {
+        String select = "SELECT 'more' FROM DUAL";
+        try (Connection connection = h2Driver.connect(jdbcURL, null); Statement statement = connection.createStatement()) {
+            assertTrue(statement.execute(select));
+            int results = 0;
+            // standard loop over the results of an execute
+            for (;;) {
+                ResultSet resultSet = statement.getResultSet();
+                if (resultSet == null && statement.getUpdateCount() == -1) {
+                    break;
+                }
+                results++;
+                statement.getMoreResults();
+            }
+            assertEquals(results, 1);
+            assertNull(statement.getResultSet());
+        }
+
+        QueryStatistics selectStatistics = null;
+        for (QueryStatistics statistics : h2Driver.getStatistics().getQueryStatistics()) {
+            if (statistics.getPortNumber() == portNumber && select.equals(statistics.getSql())) {
+                selectStatistics = statistics;
+            }
+        }
+        assertNotNull(selectStatistics);
+        assertEquals(selectStatistics.getExecutions(), 1);
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the routing of the read-only connections to the replicas of a database.
+ * @author Florent Benoit
+ */
+public class TestReadReplicas {
+
+    private final int portNumber = 1524;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/replicadatabase;READ_REPLICAS=2;REPLICA_MAX_STALENESS=60000";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    private int count(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM replicaTable")) {
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+
+    @Test
+    public void testReadOnlyRouting() throws SQLException {
+        try (Connection writer = h2Driver.connect(jdbcURL, null)) {
+            try (Statement statement = writer.createStatement()) {
+                statement.execute("DROP TABLE replicaTable IF EXISTS");
+                statement.execute("CREATE TABLE replicaTable(id int primary key)");
+                statement.execute("INSERT INTO replicaTable VALUES(1)");
+            }
+        }
+
+        // replicas are created from the current data
+        try (Connection reader = h2Driver.connect(jdbcURL + ";READONLY_ROUTE=true", null)) {
+            assertTrue(reader.isReadOnly());
+            assertEquals(count(reader), 1);
+            try (Statement statement = reader.createStatement()) {
+                statement.execute("INSERT INTO replicaTable VALUES(2)");
+                fail("Replicas are read-only");
+            } catch (SQLException e) {
+                // expected
+            }
+
+            // back to the database
+            reader.setReadOnly(false);
+            try (Statement statement = reader.createStatement()) {
+                statement.execute("INSERT INTO replicaTable VALUES(2)");
+            }
+            assertEquals(count(reader), 2);
+
+            // the snapshot doesn't see the last insert
+            reader.setReadOnly(true);
+            assertEquals(count(reader), 1);
+            assertTrue(reader.isValid(0));
+        }
+    }
+
+    @Test
+    public void testStaleReplica() throws SQLException, InterruptedException {
+        String writerURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/stalereplicadatabase";
+        String staleURL = writerURL + ";READ_REPLICAS=1;REPLICA_MAX_STALENESS=500";
+        // the replicas are created with the reader, after the table
+        try (Connection writer = h2Driver.connect(writerURL, null)) {
+            try (Statement statement = writer.createStatement()) {
+                statement.execute("DROP TABLE replicaTable IF EXISTS");
+                statement.execute("CREATE TABLE replicaTable(id int primary key)");
+                statement.execute("INSERT INTO replicaTable VALUES(1)");
+            }
+            try (Connection reader = h2Driver.connect(staleURL + ";READONLY_ROUTE=true", null)) {
+                assertEquals(count(reader), 1);
+                try (Statement statement = writer.createStatement()) {
+                    statement.execute("INSERT INTO replicaTable VALUES(2)");
+                }
+
+                // a statement is still opened on the stale snapshot
+                Statement opened = reader.createStatement();
+                Thread.sleep(1500);
+                try {
+                    reader.createStatement();
+                    fail("Statements are opened on the stale replica");
+                } catch (SQLException e) {
+                    // expected
+                }
+
+                // routed to the current snapshot once the statements are closed
+                opened.close();
+                assertEquals(count(reader), 2);
+            }
+        }
+    }
+
+    @Test
+    public void testTransactionAndSchema() throws SQLException {
+        String writerURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/schemareplicadatabase";
+        try (Connection writer = h2Driver.connect(writerURL, null); Statement statement = writer.createStatement()) {
+            statement.execute("DROP SCHEMA replicaSchema IF EXISTS");
+            statement.execute("CREATE SCHEMA replicaSchema");
+            statement.execute("CREATE TABLE replicaSchema.replicaTable(id int primary key)");
+            statement.execute("INSERT INTO replicaSchema.replicaTable VALUES(1)");
+        }
+
+        try (Connection connection = h2Driver.connect(writerURL + ";READ_REPLICAS=1;REPLICA_MAX_STALENESS=60000", null)) {
+            // the insert would be left on the database
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("INSERT INTO replicaSchema.replicaTable VALUES(2)");
+            }
+            try {
+                connection.setReadOnly(true);
+                fail("A transaction is opened on the database");
+            } catch (SQLException e) {
+                // expected
+            }
+            connection.rollback();
+            connection.setAutoCommit(true);
+
+            // the schema follows the connection on the replica
+            connection.setSchema("REPLICASCHEMA");
+            connection.setReadOnly(true);
+            assertEquals(connection.getSchema(), "REPLICASCHEMA");
+            assertEquals(count(connection), 1);
+            connection.setReadOnly(false);
+            assertEquals(count(connection), 1);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertFalse;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test that an unused H2 server is kept started during the idle timeout.
+ * @author Florent Benoit
+ */
+public class TestServerIdleTimeout {
+
+    private final int portNumber = 1507;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/idledatabase;SERVER_IDLE_TIMEOUT=1000";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testServerKeptDuringIdleTimeout() throws SQLException, IOException, InterruptedException {
+        Connection connection = h2Driver.connect(jdbcURL, null);
+        connection.close();
+
+        // still running
+        checkRunning();
+
+        // new connection during the idle timeout cancels the stop
+        Thread.sleep(500);
+        connection = h2Driver.connect(jdbcURL, null);
+        Thread.sleep(1000);
+        checkRunning();
+        connection.close();
+
+        // stopped after the idle timeout
+        Thread.sleep(2000);
+        try (Socket socket = new Socket("localhost", portNumber)) {
+            assertFalse(socket.isConnected(), "Server should be stopped");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    protected void checkRunning() throws IOException {
+        Socket socket = new Socket("localhost", portNumber);
+        socket.close();
+    }
+
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test concurrent connections on several ports handled by the Peergreen/H2 driver.
+ * @author Florent Benoit
+ */
+public class TestServerRegistry {
+
+    private final int[] portNumbers = {1505, 1506};
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testConcurrentConnectAndClose() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                final String url = "jdbc:pg+h2:tcp://localhost:" + portNumbers[i % portNumbers.length] + "/concurrentdatabase";
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try (Connection connection = h2Driver.connect(url, null); Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery("CALL 1")) {
+                            assertTrue(rs.next());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        // all connections are closed so servers should be stopped
+        for (int portNumber : portNumbers) {
+            try (Socket socket = new Socket("localhost", portNumber)) {
+                assertFalse(socket.isConnected(), "Server should be stopped");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the logical ports multiplexed on shared H2 servers.
+ * @author Florent Benoit
+ */
+public class TestSharedServers {
+
+    private final int firstPortNumber = 1514;
+
+    private final int secondPortNumber = 1515;
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testLogicalPorts() throws SQLException {
+        try (Connection first = h2Driver.connect(getURL(firstPortNumber), null); Connection second = h2Driver.connect(getURL(secondPortNumber), null)) {
+            // logical ports are not opened
+            assertNotListening(firstPortNumber);
+            assertNotListening(secondPortNumber);
+
+            // same database name on each logical port but distinct databases
+            try (Statement statement = first.createStatement()) {
+                statement.execute("DROP TABLE sharedTable IF EXISTS");
+                statement.execute("CREATE TABLE sharedTable(id int primary key)");
+            }
+            try (Statement statement = second.createStatement();
+                    ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'SHAREDTABLE'")) {
+                assertTrue(resultSet.next());
+                assertEquals(resultSet.getInt(1), 0);
+            }
+
+            // databases are stored in the directory of the logical port
+            File databaseDir = new File(System.getProperty("java.io.tmpdir"), "tcp-" + firstPortNumber);
+            assertTrue(new File(databaseDir, "shareddatabase.h2.db").exists());
+        }
+    }
+
+    protected String getURL(int portNumber) {
+        return "jdbc:pg+h2:tcp://localhost:" + portNumber + "/shareddatabase;SHARED_SERVERS=1";
+    }
+
+    protected void assertNotListening(int portNumber) {
+        try (Socket socket = new Socket("localhost", portNumber)) {
+            assertFalse(socket.isConnected(), "Logical port should not be opened");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+}
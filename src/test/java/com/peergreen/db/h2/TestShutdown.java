@@ -0,0 +1,93 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the shutdown of the servers when the driver is stopped.
+ * @author Florent Benoit
+ */
+public class TestShutdown {
+
+    private final int portNumber = 1518;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/shutdowndatabase";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testDrainThenForce() throws SQLException, InterruptedException {
+        final Connection drained = h2Driver.connect(jdbcURL, null);
+        Connection leaked = h2Driver.connect(jdbcURL, null);
+
+        // closed by the application during the drain
+        Thread closer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    drained.close();
+                } catch (InterruptedException | SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        closer.start();
+
+        Map<Integer, Long> stopTimes = h2Driver.stopServers(Collections.singletonList(portNumber), 500);
+        closer.join();
+
+        assertTrue(drained.isClosed());
+        // closed by force after the timeout
+        assertTrue(leaked.isClosed());
+        Long stopTime = stopTimes.get(portNumber);
+        assertNotNull(stopTime);
+        assertTrue(stopTime >= 400, "Connections should be drained during the timeout, stopped after " + stopTime + " ms");
+        assertNotRunning();
+    }
+
+    @Test
+    public void testConnectAfterInvalidate() throws SQLException {
+        Connection connection = h2Driver.connect(jdbcURL, null);
+        h2Driver.invalidate();
+        try {
+            assertTrue(connection.isClosed());
+            // only the connects done during the invalidation are rejected
+            try (Connection newConnection = h2Driver.connect(jdbcURL, null)) {
+                assertFalse(newConnection.isClosed());
+            }
+        } finally {
+            h2Driver.validate();
+        }
+    }
+
+    protected void assertNotRunning() {
+        try (Socket socket = new Socket("localhost", portNumber)) {
+            assertFalse(socket.isConnected(), "Server should be stopped");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+}
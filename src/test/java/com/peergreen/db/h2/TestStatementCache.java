@@ -0,0 +1,144 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.jdbc.JdbcPreparedStatement;
+import org.testng.annotations.Test;
+
+/**
+ * Test the cache of prepared statements of the connections.
+ * @author Florent Benoit
+ */
+public class TestStatementCache {
+
+    private final int portNumber = 1511;
+
+    private final String jdbcURL = "jdbc:pg+h2:tcp://localhost:" + portNumber + "/cachedatabase;STATEMENT_CACHE_SIZE=2";
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    private static final String SELECT = "SELECT name FROM cacheTable WHERE id = ?";
+
+    @Test
+    public void testStatementReused() throws SQLException {
+        try (Connection connection = h2Driver.connect(jdbcURL, null)) {
+            createTable(connection);
+
+            PreparedStatement first = connection.prepareStatement(SELECT);
+            JdbcPreparedStatement physical = first.unwrap(JdbcPreparedStatement.class);
+            first.setInt(1, 1);
+            try (ResultSet resultSet = first.executeQuery()) {
+                assertTrue(resultSet.next());
+                assertEquals(resultSet.getString(1), "one");
+            }
+            first.close();
+            assertTrue(first.isClosed());
+            try {
+                first.executeQuery();
+                fail("Statement has been given back to the cache");
+            } catch (SQLException e) {
+                // expected
+            }
+
+            // same physical statement, parameters have been cleared
+            try (PreparedStatement second = connection.prepareStatement(SELECT)) {
+                assertSame(second.unwrap(JdbcPreparedStatement.class), physical);
+                assertFalse(second.isClosed());
+                second.setInt(1, 2);
+                try (ResultSet resultSet = second.executeQuery()) {
+                    assertTrue(resultSet.next());
+                    assertEquals(resultSet.getString(1), "two");
+                }
+            }
+
+            // the same SQL prepared twice at the same time
+            try (PreparedStatement third = connection.prepareStatement(SELECT); PreparedStatement fourth = connection.prepareStatement(SELECT)) {
+                assertNotSame(third.unwrap(JdbcPreparedStatement.class), fourth.unwrap(JdbcPreparedStatement.class));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidatedOnDDL() throws SQLException {
+        try (Connection connection = h2Driver.connect(jdbcURL, null)) {
+            createTable(connection);
+
+            JdbcPreparedStatement physical;
+            try (PreparedStatement first = connection.prepareStatement(SELECT)) {
+                physical = first.unwrap(JdbcPreparedStatement.class);
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ALTER TABLE cacheTable ADD COLUMN description varchar(100)");
+            }
+            assertTrue(physical.isClosed());
+            try (PreparedStatement second = connection.prepareStatement(SELECT)) {
+                assertNotSame(second.unwrap(JdbcPreparedStatement.class), physical);
+            }
+        }
+    }
+
+    @Test
+    public void testNotPoolable() throws SQLException {
+        try (Connection connection = h2Driver.connect(jdbcURL, null)) {
+            createTable(connection);
+
+            JdbcPreparedStatement physical;
+            try (PreparedStatement first = connection.prepareStatement(SELECT)) {
+                first.setPoolable(false);
+                physical = first.unwrap(JdbcPreparedStatement.class);
+            }
+            assertTrue(physical.isClosed());
+        }
+    }
+
+    @Test
+    public void testCacheKeptByThePool() throws SQLException {
+        String pooledURL = jdbcURL + ";POOL_MAX_SIZE=1";
+        // keep the server started, the pool is evicted when the server is stopped
+        Connection keeper = h2Driver.connect(jdbcURL, null);
+        JdbcPreparedStatement physical;
+        try (Connection connection = h2Driver.connect(pooledURL, null)) {
+            createTable(connection);
+            // not closed by the application, closed with the connection
+            PreparedStatement first = connection.prepareStatement(SELECT);
+            physical = first.unwrap(JdbcPreparedStatement.class);
+        }
+        assertFalse(physical.isClosed());
+        try (Connection connection = h2Driver.connect(pooledURL, null); PreparedStatement second = connection.prepareStatement(SELECT)) {
+            assertSame(second.unwrap(JdbcPreparedStatement.class), physical);
+            assertSame(second.getConnection(), connection);
+        }
+        keeper.close();
+    }
+
+    protected void createTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE cacheTable IF EXISTS");
+            statement.execute("CREATE TABLE cacheTable(id int primary key, name varchar(100))");
+            statement.execute("INSERT INTO cacheTable VALUES(1, 'one'), (2, 'two')");
+        }
+    }
+
+}
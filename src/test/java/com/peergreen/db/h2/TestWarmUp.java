@@ -0,0 +1,75 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.sql.Connection;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the databases opened when the driver is validated.
+ * @author Florent Benoit
+ */
+public class TestWarmUp {
+
+    private final int firstPortNumber = 1516;
+
+    private final int secondPortNumber = 1517;
+
+    private final H2Driver h2Driver = H2Driver.instance();
+
+    @Test
+    public void testWarmUp() throws Exception {
+        h2Driver.setWarmUp("jdbc:pg+h2:tcp://localhost:" + firstPortNumber + "/warmdatabase;USER=warm;PASSWORD=up, "
+                + "jdbc:pg+h2:tcp://localhost:" + secondPortNumber + "/warmdatabase");
+        try {
+            h2Driver.warmUp();
+            assertTrue(h2Driver.awaitReady(60, TimeUnit.SECONDS));
+            assertTrue(h2Driver.isReady());
+            assertTrue(h2Driver.getStatistics().isReady());
+
+            // servers are already started
+            checkListening(firstPortNumber);
+            checkListening(secondPortNumber);
+            long serverStarts = h2Driver.getStatistics().getPortStatistics(firstPortNumber).getServerStarts();
+
+            // user has been provisioned
+            Properties info = new Properties();
+            info.setProperty("user", "warm");
+            info.setProperty("password", "up");
+            try (Connection connection = h2Driver.connect("jdbc:pg+h2:tcp://localhost:" + firstPortNumber + "/warmdatabase", info)) {
+                assertFalse(connection.isClosed());
+            }
+            assertEquals(h2Driver.getStatistics().getPortStatistics(firstPortNumber).getServerStarts(), serverStarts);
+            // still started by the warm-up
+            checkListening(firstPortNumber);
+        } finally {
+            h2Driver.releaseWarmUp();
+            h2Driver.setWarmUp(null);
+        }
+    }
+
+    protected void checkListening(int portNumber) throws IOException {
+        try (Socket socket = new Socket("localhost", portNumber)) {
+            assertTrue(socket.isConnected());
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.jdbc.JdbcConnection;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.peergreen.db.h2.H2Driver;
+
+/**
+ * Test the connection wrapper.
+ * @author Florent Benoit
+ */
+public class TestH2Connection {
+
+    @Mock
+    private Connection physicalConnection;
+
+    private H2Connection connection;
+
+    @BeforeMethod
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        // port -1 is not managed by the driver
+        connection = new H2Connection(H2Driver.instance(), -1, physicalConnection);
+    }
+
+    @Test
+    public void testUnwrap() throws SQLException {
+        assertTrue(connection.isWrapperFor(H2Connection.class));
+        assertSame(connection.unwrap(H2Connection.class), connection);
+        assertTrue(connection.isWrapperFor(Connection.class));
+        assertFalse(connection.isWrapperFor(JdbcConnection.class));
+        try {
+            connection.unwrap(JdbcConnection.class);
+            fail("Not a wrapper for a JdbcConnection");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testExceptionNotWrapped() throws SQLException {
+        SQLException exception = new SQLException("expected");
+        doThrow(exception).when(physicalConnection).commit();
+        try {
+            connection.commit();
+            fail("Exception should be thrown");
+        } catch (SQLException e) {
+            assertSame(e, exception);
+        }
+    }
+
+    @Test
+    public void testCloseOnlyOnce() throws SQLException {
+        connection.close();
+        connection.close();
+        verify(physicalConnection, times(1)).close();
+        assertTrue(connection.isClosed());
+        try {
+            connection.createStatement();
+            fail("Connection is closed");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testIsValidFromServerState() throws SQLException {
+        ServerEntry entry = mock(ServerEntry.class);
+        when(entry.isHealthy(anyLong())).thenReturn(true);
+        when(physicalConnection.isValid(anyInt())).thenReturn(true);
+        connection.setValidation(entry, 60000);
+
+        // healthy server, no round-trip
+        assertTrue(connection.isValid(1));
+        verify(physicalConnection, never()).isValid(anyInt());
+
+        // unhealthy server, round-trip
+        when(entry.isHealthy(anyLong())).thenReturn(false);
+        assertTrue(connection.isValid(1));
+        verify(physicalConnection, times(1)).isValid(1);
+
+        // failed round-trip, the next check is a round-trip even if the server is healthy
+        when(physicalConnection.isValid(anyInt())).thenReturn(false);
+        assertFalse(connection.isValid(1));
+        when(entry.isHealthy(anyLong())).thenReturn(true);
+        assertFalse(connection.isValid(1));
+        verify(physicalConnection, times(3)).isValid(1);
+    }
+
+    @Test
+    public void testIsValidAfterFailure() throws SQLException {
+        ServerEntry entry = mock(ServerEntry.class);
+        when(entry.isHealthy(anyLong())).thenReturn(true);
+        when(physicalConnection.isValid(anyInt())).thenReturn(true);
+        Statement physicalStatement = mock(Statement.class);
+        when(physicalConnection.createStatement()).thenReturn(physicalStatement);
+        when(physicalStatement.executeQuery(anyString())).thenThrow(new SQLException("session closed"));
+        connection.setValidation(entry, 60000);
+
+        // the session has been closed by the server, the next check is a round-trip
+        try (Statement statement = connection.createStatement()) {
+            statement.executeQuery("SELECT 1");
+            fail("Exception should be thrown");
+        } catch (SQLException e) {
+            // expected
+        }
+        when(physicalConnection.isValid(anyInt())).thenReturn(false);
+        assertFalse(connection.isValid(1));
+        verify(physicalConnection, times(1)).isValid(1);
+
+        // closed locally
+        connection.setValidation(entry, 60000);
+        when(physicalConnection.isClosed()).thenReturn(true);
+        assertFalse(connection.isValid(1));
+    }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2013 Peergreen S.A.S. All rights reserved.
+ * Proprietary and confidential.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.peergreen.db.h2.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test the provisioning of the users of the H2 server.
+ * @author Florent Benoit
+ */
+public class TestH2Server {
+
+    private final int portNumber = 1512;
+
+    private H2Server h2Server;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        File baseDir = new File(System.getProperty("java.io.tmpdir"), "peergreen-h2-server-test-" + System.nanoTime());
+        h2Server = new H2Server(baseDir, portNumber);
+        h2Server.addUser("first", "pass'word", "usersdatabase");
+        h2Server.addUser("second", null, "usersdatabase");
+        h2Server.addUser("first", "pass'word", "otherdatabase");
+        h2Server.start();
+    }
+
+    @AfterClass
+    public void stopServer() {
+        h2Server.stop();
+    }
+
+    @Test
+    public void testUsersProvisionedAtStart() throws SQLException {
+        getConnection("usersdatabase", "first", "pass'word").close();
+        getConnection("usersdatabase", "second", "").close();
+        getConnection("otherdatabase", "FIRST", "pass'word").close();
+    }
+
+    @Test(dependsOnMethods = "testUsersProvisionedAtStart")
+    public void testPasswordChangedOnRunningServer() throws SQLException {
+        // same credentials, nothing to do
+        h2Server.addUser("first", "pass'word", "usersdatabase");
+
+        h2Server.addUser("first", "newpassword", "usersdatabase");
+        getConnection("usersdatabase", "first", "newpassword").close();
+        try {
+            getConnection("usersdatabase", "first", "pass'word").close();
+            fail("Password has been changed");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testQuoting() {
+        assertEquals(H2Server.quoteIdentifier("A\"B"), "\"A\"\"B\"");
+        assertEquals(H2Server.quoteLiteral("a'b"), "'a''b'");
+    }
+
+    protected Connection getConnection(String database, String user, String password) throws SQLException {
+        return DriverManager.getConnection("jdbc:h2:tcp://localhost:" + portNumber + "/" + database, user, password);
+    }
+
+}